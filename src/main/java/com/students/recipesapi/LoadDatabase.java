@@ -5,6 +5,7 @@ import com.students.recipesapi.repository.ProductRepository;
 import com.students.recipesapi.repository.RecipeIngredientRepository;
 import com.students.recipesapi.repository.RecipeRepository;
 import com.students.recipesapi.repository.UserRepository;
+import com.students.recipesapi.service.ImageService;
 import org.h2.util.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,175 +28,183 @@ public class LoadDatabase {
 
 
     @Bean
-    CommandLineRunner initDatabase(UserRepository userRepository, ProductRepository productRepository, RecipeRepository recipeRepository, RecipeIngredientRepository ingredientRepository) {
+    CommandLineRunner initDatabase(UserRepository userRepository, ProductRepository productRepository, RecipeRepository recipeRepository, RecipeIngredientRepository ingredientRepository, ImageService imageService) {
         return args -> {
+            // The schema is no longer recreated on startup, so the sample data is only loaded into an empty database
+            if (userRepository.count() > 0) return;
+
             UserEntity jan = userRepository.save(new UserEntity("jkow@email.pl", "Jan", "Kowalski", "$2b$10$skJlwF3pkXBslldjZtIkmOdUJcImTbeWlweqZsJ7FoscY3shfx4Wq"));
             log.info("Preloaded: " + jan);
 
             Product maka = productRepository.save(new Product(
-                    -1L,
+                    null,
                     "Mąką",
                     "123456789",
-                    loadImage("mąka.png"),
+                    imageService.store(loadImage("mąka.png")),
                     jan
             ));
             log.info("Preloaded: " + maka);
 
             Product olej = productRepository.save(new Product(
-                    -1L,
+                    null,
                     "Olej",
                     "123456789",
-                    loadImage("olej.png"),
+                    imageService.store(loadImage("olej.png")),
                     jan
             ));
             log.info("Preloaded: " + olej);
 
             Product serbialy = productRepository.save(new Product(
-                    -1L,
+                    null,
                     "Ser biały",
                     "123456789",
-                    loadImage("ser biały.png"),
+                    imageService.store(loadImage("ser biały.png")),
                     jan
             ));
             log.info("Preloaded: " + serbialy);
 
             Product woda = productRepository.save(new Product(
-                    -1L,
+                    null,
                     "Woda",
                     "123456789",
-                    loadImage("woda.png"),
+                    imageService.store(loadImage("woda.png")),
                     jan
             ));
             log.info("Preloaded: " + woda);
 
             Product ziemniaki = productRepository.save(new Product(
-                    -1L,
+                    null,
                     "Ziemniaki",
                     "123456789",
-                    loadImage("ziemniaki.png"),
+                    imageService.store(loadImage("ziemniaki.png")),
                     jan
             ));
             log.info("Preloaded: " + ziemniaki);
 
             Product sospomidorowy = productRepository.save(new Product(
-                    -1L,
+                    null,
                     "Sos pomidorowy",
                     "123456789",
-                    loadImage("sos.png"),
+                    imageService.store(loadImage("sos.png")),
                     jan
             ));
             log.info("Preloaded: " + sospomidorowy);
 
             Product drozdze = productRepository.save(new Product(
-                    -1L,
+                    null,
                     "Drożdże",
                     "123456789",
-                    loadImage("drożdże.png"),
+                    imageService.store(loadImage("drożdże.png")),
                     jan
             ));
             log.info("Preloaded: " + drozdze);
 
             Product serzolty = productRepository.save(new Product(
-                    -1L,
+                    null,
                     "Ser żółty",
                     "123456789",
-                    loadImage("ser żółty.png"),
+                    imageService.store(loadImage("ser żółty.png")),
                     jan
             ));
             log.info("Preloaded: " + serzolty);
 
             Product schab = productRepository.save(new Product(
-                    -1L,
+                    null,
                     "Schab",
                     "123456789",
-                    loadImage("schab.png"),
+                    imageService.store(loadImage("schab.png")),
                     jan
             ));
             log.info("Preloaded: " + schab);
 
             Product smalec = productRepository.save(new Product(
-                    -1L,
+                    null,
                     "Smalec",
                     "123456789",
-                    loadImage("smalec.png"),
+                    imageService.store(loadImage("smalec.png")),
                     jan
             ));
             log.info("Preloaded: " + smalec);
 
             Product kapustakiszona = productRepository.save(new Product(
-                    -1L,
+                    null,
                     "Kapusta",
                     "123456789",
-                    loadImage("kapusta.png"),
+                    imageService.store(loadImage("kapusta.png")),
                     jan
             ));
             log.info("Preloaded: " + kapustakiszona);
 
             Product miesomielone = productRepository.save(new Product(
-                    -1L,
+                    null,
                     "Mięso mielone",
                     "123456789",
-                    loadImage("mięso mielone.png"),
+                    imageService.store(loadImage("mięso mielone.png")),
                     jan
             ));
             log.info("Preloaded: " + miesomielone);
 
             Product cebula = productRepository.save(new Product(
-                    -1L,
+                    null,
                     "Cebula",
                     "123456789",
-                    loadImage("cebula.png"),
+                    imageService.store(loadImage("cebula.png")),
                     jan
             ));
             log.info("Preloaded: " + cebula);
 
             Product makaron = productRepository.save(new Product(
-                    -1L,
+                    null,
                     "makaron",
                     "123456789",
-                    loadImage("makaron.png"),
+                    imageService.store(loadImage("makaron.png")),
                     jan
             ));
             log.info("Preloaded: " + makaron);
 
             Product zurekwiniary = productRepository.save(new Product(
-                    -1L,
+                    null,
                     "Żurek Winiary",
                     "123456789",
-                    loadImage("żurek winiary.png"),
+                    imageService.store(loadImage("żurek winiary.png")),
                     jan
             ));
             log.info("Preloaded: " + zurekwiniary);
 
             Product kielbasa = productRepository.save(new Product(
-                    -1L,
+                    null,
                     "kielbasa",
                     "123456789",
-                    loadImage("kiełbasa.png"),
+                    imageService.store(loadImage("kiełbasa.png")),
                     jan
             ));
             log.info("Preloaded: " + kielbasa);
 
             Product jajka = productRepository.save(new Product(
-                    -1L,
+                    null,
                     "Jajka",
                     "123456789",
-                    loadImage("jajka.png"),
+                    imageService.store(loadImage("jajka.png")),
                     jan
             ));
             log.info("Preloaded: " + jajka);
 
             createRecipe(new Recipe(
-                            -1L,
+                            null,
                             "Pierogi Ruskie",
                             "Smaczne i proste pierogi ze wschodu",
                             jan,
                             Collections.emptySet(),
                             new LinkedHashSet<>(Arrays.asList("Drugie Danie")),
-                            loadImage("pierogi.png"),
-                            LocalDateTime.now(ZoneId.of("Europe/Warsaw")).toString(),
-                            LocalDateTime.now(ZoneId.of("Europe/Warsaw")).toString(),
-                            0.0),
+                            imageService.store(loadImage("pierogi.png")),
+                            LocalDateTime.now(ZoneId.of("Europe/Warsaw")),
+                            LocalDateTime.now(ZoneId.of("Europe/Warsaw")),
+                            0.0,
+                            0.0,
+                            0L,
+                            0L,
+                            false,
+                            null),
 
                     new LinkedHashSet<>(Arrays.asList(ziemniaki, serbialy, maka, woda, olej)),
                     Arrays.asList("500g", "500g", "1kg", "800ml", "100ml"),
@@ -203,16 +212,21 @@ public class LoadDatabase {
                     ingredientRepository);
 
             createRecipe(new Recipe(
-                            -1L,
+                            null,
                             "Pizza",
                             "Niebanalna Margherita na grubym cieście",
                             jan,
                             Collections.emptySet(),
                             new LinkedHashSet<>(Arrays.asList("Z pieca")),
-                            loadImage("pizza.png"),
-                            LocalDateTime.now(ZoneId.of("Europe/Warsaw")).toString(),
-                            LocalDateTime.now(ZoneId.of("Europe/Warsaw")).toString(),
-                            0.0),
+                            imageService.store(loadImage("pizza.png")),
+                            LocalDateTime.now(ZoneId.of("Europe/Warsaw")),
+                            LocalDateTime.now(ZoneId.of("Europe/Warsaw")),
+                            0.0,
+                            0.0,
+                            0L,
+                            0L,
+                            false,
+                            null),
 
                     new LinkedHashSet<>(Arrays.asList(maka, sospomidorowy, woda, drozdze, serzolty)),
                     Arrays.asList("500g", "100ml", "200ml", "10g", "100g"),
@@ -220,16 +234,21 @@ public class LoadDatabase {
                     ingredientRepository);
 
             createRecipe(new Recipe(
-                            -1L,
+                            null,
                             "Schabowy z kartoflami",
                             "Tradycyjny polski chabowy z ziemniakami",
                             jan,
                             Collections.emptySet(),
                             new LinkedHashSet<>(Arrays.asList("Mięso", "Drugie danie")),
-                            loadImage("schabowy.png"),
-                            LocalDateTime.now(ZoneId.of("Europe/Warsaw")).toString(),
-                            LocalDateTime.now(ZoneId.of("Europe/Warsaw")).toString(),
-                            0.0),
+                            imageService.store(loadImage("schabowy.png")),
+                            LocalDateTime.now(ZoneId.of("Europe/Warsaw")),
+                            LocalDateTime.now(ZoneId.of("Europe/Warsaw")),
+                            0.0,
+                            0.0,
+                            0L,
+                            0L,
+                            false,
+                            null),
 
                     new LinkedHashSet<>(Arrays.asList(ziemniaki, schab, smalec, kapustakiszona)),
                     Arrays.asList("1kg", "200g", "1", "1"),
@@ -237,16 +256,21 @@ public class LoadDatabase {
                     ingredientRepository);
 
             createRecipe(new Recipe(
-                            -1L,
+                            null,
                             "Spaghetti",
                             "Przegląd tygodnia w sosie pomidorowym",
                             jan,
                             Collections.emptySet(),
                             new LinkedHashSet<>(Arrays.asList("Szybkie", "Mięso")),
-                            loadImage("spaghetii.png"),
-                            LocalDateTime.now(ZoneId.of("Europe/Warsaw")).toString(),
-                            LocalDateTime.now(ZoneId.of("Europe/Warsaw")).toString(),
-                            0.0),
+                            imageService.store(loadImage("spaghetii.png")),
+                            LocalDateTime.now(ZoneId.of("Europe/Warsaw")),
+                            LocalDateTime.now(ZoneId.of("Europe/Warsaw")),
+                            0.0,
+                            0.0,
+                            0L,
+                            0L,
+                            false,
+                            null),
 
                     new LinkedHashSet<>(Arrays.asList(miesomielone, sospomidorowy, cebula, makaron, olej)),
                     Arrays.asList("1kg", "500ml", "2", "1", "100ml"),
@@ -254,16 +278,21 @@ public class LoadDatabase {
                     ingredientRepository);
 
             createRecipe(new Recipe(
-                            -1L,
+                            null,
                             "Żurek",
                             "Szybki żurek z kiełbasą i jajkiem",
                             jan,
                             Collections.emptySet(),
                             new LinkedHashSet<>(Arrays.asList("Zupa")),
-                            loadImage("żurek.png"),
-                            LocalDateTime.now(ZoneId.of("Europe/Warsaw")).toString(),
-                            LocalDateTime.now(ZoneId.of("Europe/Warsaw")).toString(),
-                            0.0),
+                            imageService.store(loadImage("żurek.png")),
+                            LocalDateTime.now(ZoneId.of("Europe/Warsaw")),
+                            LocalDateTime.now(ZoneId.of("Europe/Warsaw")),
+                            0.0,
+                            0.0,
+                            0L,
+                            0L,
+                            false,
+                            null),
 
                     new LinkedHashSet<>(Arrays.asList(zurekwiniary, kielbasa, jajka)),
                     Arrays.asList("1", "1", "2"),
@@ -0,0 +1,105 @@
+package com.students.recipesapi;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * Checks on startup that every table queried by a foreign key has an index leading with that key, so that
+ * rating, comment and ingredient lookups can't silently fall back to sequential scans when a migration drops or
+ * misses one. Hibernate's schema validation only covers tables and columns. An index counts when its leading
+ * columns equal the expected ones, whatever its name.
+ */
+@Component
+public class SchemaIndexVerifier {
+    private static final Logger log = LoggerFactory.getLogger(SchemaIndexVerifier.class);
+
+    private static final List<ExpectedIndex> EXPECTED_INDEXES = Arrays.asList(
+            new ExpectedIndex("rating", "recipe_id", "user_id"),
+            new ExpectedIndex("comment", "recipe_id", "creation_date", "id"),
+            new ExpectedIndex("recipe_ingredient", "recipe_id", "product_id"),
+            new ExpectedIndex("recipe_tags", "recipe_id"),
+            new ExpectedIndex("product", "barcode"),
+            new ExpectedIndex("product", "normalized_name", "id"),
+            new ExpectedIndex("recipe", "creation_date", "id"),
+            new ExpectedIndex("recipe", "image_hash"),
+            new ExpectedIndex("product", "image_hash"),
+            new ExpectedIndex("recovery_token", "expiration_date"),
+            new ExpectedIndex("outbox_email", "status", "next_attempt_at")
+    );
+
+    private final DataSource dataSource;
+
+    @Value("${schema.index-check.fail-on-missing:true}")
+    private boolean failOnMissing;
+
+    public SchemaIndexVerifier(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void verify() {
+        List<String> missing = findMissingIndexes();
+        if (missing.isEmpty()) return;
+        String message = "Missing database indexes: " + String.join(", ", missing);
+        if (failOnMissing) throw new IllegalStateException(message);
+        log.warn(message);
+    }
+
+    /**
+     * Returns the expected indexes that don't exist, as {@code table(column, ...)}.
+     */
+    public List<String> findMissingIndexes() {
+        List<String> missing = new ArrayList<>();
+        try (Connection connection = dataSource.getConnection()) {
+            DatabaseMetaData metaData = connection.getMetaData();
+            for (ExpectedIndex expected : EXPECTED_INDEXES) {
+                if (!hasIndex(metaData, expected.table, expected.columns)) {
+                    missing.add(expected.table + "(" + String.join(", ", expected.columns) + ")");
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to read the database indexes.", e);
+        }
+        return missing;
+    }
+
+    private static boolean hasIndex(DatabaseMetaData metaData, String table, List<String> columns) throws SQLException {
+        String storedTable = metaData.storesUpperCaseIdentifiers() ? table.toUpperCase(Locale.ROOT) : table;
+        Map<String, SortedMap<Short, String>> indexColumns = new HashMap<>();
+        try (ResultSet indexInfo = metaData.getIndexInfo(null, null, storedTable, false, false)) {
+            while (indexInfo.next()) {
+                String indexName = indexInfo.getString("INDEX_NAME");
+                String columnName = indexInfo.getString("COLUMN_NAME");
+                if (indexName == null || columnName == null) continue;
+                indexColumns.computeIfAbsent(indexName, name -> new TreeMap<>())
+                        .put(indexInfo.getShort("ORDINAL_POSITION"), columnName.toLowerCase(Locale.ROOT));
+            }
+        }
+        for (SortedMap<Short, String> index : indexColumns.values()) {
+            List<String> indexed = new ArrayList<>(index.values());
+            if (indexed.size() >= columns.size() && indexed.subList(0, columns.size()).equals(columns)) return true;
+        }
+        return false;
+    }
+
+    private static class ExpectedIndex {
+        private final String table;
+        private final List<String> columns;
+
+        private ExpectedIndex(String table, String... columns) {
+            this.table = table;
+            this.columns = Arrays.asList(columns);
+        }
+    }
+}
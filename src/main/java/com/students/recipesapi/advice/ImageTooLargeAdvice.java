@@ -0,0 +1,26 @@
+package com.students.recipesapi.advice;
+
+import com.students.recipesapi.exception.ImageTooLargeException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+
+@ControllerAdvice
+public class ImageTooLargeAdvice {
+    @ResponseBody
+    @ExceptionHandler(ImageTooLargeException.class)
+    @ResponseStatus(HttpStatus.PAYLOAD_TOO_LARGE)
+    String imageTooLargeHandler(ImageTooLargeException e) {
+        return e.getMessage();
+    }
+
+    @ResponseBody
+    @ExceptionHandler(MaxUploadSizeExceededException.class)
+    @ResponseStatus(HttpStatus.PAYLOAD_TOO_LARGE)
+    String maxUploadSizeExceededHandler(MaxUploadSizeExceededException e) {
+        return "The uploaded file is too large.";
+    }
+}
@@ -0,0 +1,19 @@
+package com.students.recipesapi.advice;
+
+import com.students.recipesapi.exception.ServiceBusyException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+
+@ControllerAdvice
+public class ServiceBusyAdvice {
+    @ExceptionHandler(ServiceBusyException.class)
+    ResponseEntity<String> serviceBusyHandler(ServiceBusyException e) {
+        return ResponseEntity
+                .status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(e.getMessage());
+    }
+}
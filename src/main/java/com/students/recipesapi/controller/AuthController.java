@@ -38,10 +38,10 @@ public class AuthController {
     @PostMapping(value = "/login", consumes = "application/json", produces = "application/json")
     public ResponseEntity<Map<Object, Object>> login(@RequestBody LoginModel data) throws UsernameNotFoundException {
         try {
-            String username = data.getUsername();
-            authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(username, data.getPassword()));
+            authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(data.getUsername(), data.getPassword()));
+            UserEntity userEntity = userService.findByUsername(data.getUsername());
+            String username = userEntity.getUsername();
             String token = jwtTokenProvider.createToken(username, new ArrayList<>());
-            UserEntity userEntity = userService.findByUsername(username);
             Map<Object, Object> model = new HashMap<>();
             model.put("username", username);
             model.put("token", token);
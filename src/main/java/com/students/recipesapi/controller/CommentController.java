@@ -1,17 +1,19 @@
 package com.students.recipesapi.controller;
 
 import com.students.recipesapi.entity.Comment;
-import com.students.recipesapi.entity.Recipe;
 import com.students.recipesapi.model.CommentModel;
-import com.students.recipesapi.model.RecipeModel;
+import com.students.recipesapi.model.CommentPage;
 import com.students.recipesapi.service.CommentService;
-import com.students.recipesapi.service.RecipeService;
+import org.springframework.http.CacheControl;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.security.Principal;
+import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/comments")
@@ -24,8 +26,34 @@ public class CommentController {
 
     @GetMapping("/get/forRecipe/{recipeId}")
     @ResponseBody
-    ResponseEntity<List<Comment>> forRecipe(@PathVariable Long recipeId) {
-        return ResponseEntity.ok(commentService.findForRecipe(recipeId));
+    ResponseEntity<List<Comment>> forRecipe(
+            @PathVariable Long recipeId,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false) String cursor,
+            WebRequest request
+    ) {
+        if (RecipeController.isRevalidation(request)) {
+            Optional<Long> recipeVersion = commentService.findRecipeVersion(recipeId);
+            if (recipeVersion.isPresent() && request.checkNotModified(RecipeController.recipeEtag("comments", recipeId, recipeVersion.get()))) {
+                return null;
+            }
+        }
+        CommentPage commentPage = commentService.findPageForRecipe(recipeId, size, cursor);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (commentPage.getRecipeVersion() != null) {
+            response.eTag(RecipeController.recipeEtag("comments", recipeId, commentPage.getRecipeVersion()))
+                    .cacheControl(CacheControl.noCache());
+        }
+        if (commentPage.getNextCursor() != null) {
+            response.header(RecipeController.NEXT_CURSOR_HEADER, commentPage.getNextCursor());
+        }
+        return response.body(commentPage.getComments());
+    }
+
+    @GetMapping("/get/countForRecipe/{recipeId}")
+    @ResponseBody
+    ResponseEntity<Map<String, Long>> countForRecipe(@PathVariable Long recipeId) {
+        return ResponseEntity.ok(Collections.singletonMap("count", commentService.countForRecipe(recipeId)));
     }
 
     @PostMapping(value = "/create", consumes = "application/json", produces = "application/json")
@@ -0,0 +1,112 @@
+package com.students.recipesapi.controller;
+
+import com.students.recipesapi.model.ImageMetadata;
+import com.students.recipesapi.model.ImageUpload;
+import com.students.recipesapi.model.ImageVariant;
+import com.students.recipesapi.service.ImageService;
+import com.students.recipesapi.service.ProductService;
+import com.students.recipesapi.service.RecipeService;
+import com.students.recipesapi.service.ThumbnailService;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.security.Principal;
+import java.time.ZoneId;
+import java.util.Locale;
+import java.util.Optional;
+
+@RestController
+public class ImageController {
+    private final ImageService imageService;
+    private final ThumbnailService thumbnailService;
+    private final RecipeService recipeService;
+    private final ProductService productService;
+
+    ImageController(ImageService imageService, ThumbnailService thumbnailService, RecipeService recipeService, ProductService productService) {
+        this.imageService = imageService;
+        this.thumbnailService = thumbnailService;
+        this.recipeService = recipeService;
+        this.productService = productService;
+    }
+
+    @GetMapping("/recipes/{id}/image")
+    ResponseEntity<?> recipeImage(@PathVariable Long id, @RequestParam(defaultValue = "original") String size, WebRequest request) {
+        return image(imageService.findMetadataForRecipe(id), ImageVariant.fromParameter(size), request);
+    }
+
+    @GetMapping("/products/{id}/image")
+    ResponseEntity<?> productImage(@PathVariable Long id, @RequestParam(defaultValue = "original") String size, WebRequest request) {
+        return image(imageService.findMetadataForProduct(id), ImageVariant.fromParameter(size), request);
+    }
+
+    @PutMapping(value = "/recipes/{id}/image", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = "text/plain")
+    ResponseEntity<String> uploadRecipeImage(@PathVariable Long id, @RequestParam("image") MultipartFile image, Principal principal) throws IOException {
+        try (InputStream data = image.getInputStream()) {
+            recipeService.updateImage(principal.getName(), id, new ImageUpload(data, false));
+        }
+        return ResponseEntity.ok("Successfully updated the recipe image.");
+    }
+
+    @PutMapping(value = "/recipes/{id}/image", consumes = MediaType.TEXT_PLAIN_VALUE, produces = "text/plain")
+    ResponseEntity<String> uploadRecipeImageBase64(@PathVariable Long id, InputStream imageInBase64, Principal principal) {
+        recipeService.updateImage(principal.getName(), id, new ImageUpload(imageInBase64, true));
+        return ResponseEntity.ok("Successfully updated the recipe image.");
+    }
+
+    @PutMapping(value = "/products/{id}/image", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = "text/plain")
+    ResponseEntity<String> uploadProductImage(@PathVariable Long id, @RequestParam("image") MultipartFile image, Principal principal) throws IOException {
+        try (InputStream data = image.getInputStream()) {
+            productService.updateImage(principal.getName(), id, new ImageUpload(data, false));
+        }
+        return ResponseEntity.ok("Successfully updated the product image.");
+    }
+
+    @PutMapping(value = "/products/{id}/image", consumes = MediaType.TEXT_PLAIN_VALUE, produces = "text/plain")
+    ResponseEntity<String> uploadProductImageBase64(@PathVariable Long id, InputStream imageInBase64, Principal principal) {
+        productService.updateImage(principal.getName(), id, new ImageUpload(imageInBase64, true));
+        return ResponseEntity.ok("Successfully updated the product image.");
+    }
+
+    /**
+     * Serves the requested variant from the disk cache, or the original while the variant is not generated yet.
+     * The variant is part of the ETag, so a client that got the original as a fallback picks up the variant later.
+     * The original is copied from the database to the response as a stream, so it is never held in memory whole.
+     */
+    private ResponseEntity<?> image(ImageMetadata metadata, ImageVariant variant, WebRequest request) {
+        long lastModified = metadata.getCreationDate().atZone(ZoneId.of("Europe/Warsaw")).toInstant().toEpochMilli();
+        Optional<Path> variantFile = thumbnailService.findVariant(metadata.getHash(), variant);
+
+        if (variantFile.isPresent()) {
+            String etag = String.format("\"%s-%s\"", metadata.getHash(), variant.name().toLowerCase(Locale.ROOT));
+            if (request.checkNotModified(etag, lastModified)) {
+                return null;
+            }
+            return ResponseEntity
+                    .ok()
+                    .contentType(MediaType.parseMediaType(ThumbnailService.contentType(variantFile.get())))
+                    .cacheControl(CacheControl.noCache())
+                    .body(new FileSystemResource(variantFile.get()));
+        }
+
+        if (request.checkNotModified("\"" + metadata.getHash() + "\"", lastModified)) {
+            return null;
+        }
+
+        StreamingResponseBody original = out -> imageService.copyData(metadata.getHash(), out);
+        return ResponseEntity
+                .ok()
+                .contentType(MediaType.parseMediaType(metadata.getContentType()))
+                .contentLength(metadata.getSize())
+                .cacheControl(CacheControl.noCache())
+                .body(original);
+    }
+}
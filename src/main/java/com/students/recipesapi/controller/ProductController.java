@@ -3,13 +3,16 @@ package com.students.recipesapi.controller;
 
 import com.students.recipesapi.entity.Product;
 import com.students.recipesapi.model.ProductModel;
+import com.students.recipesapi.model.ProductPage;
+import com.students.recipesapi.model.ProductSummary;
 import com.students.recipesapi.service.ProductService;
+import org.springframework.http.CacheControl;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.security.Principal;
 import java.util.List;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/products")
@@ -22,20 +25,33 @@ public class ProductController {
 
     @GetMapping("/get/all")
     @ResponseBody
-    ResponseEntity<List<ProductModel>> all() {
-        List<Product> products = productService.findAll();
-        List<ProductModel> productModels = products
-                .stream()
-                .map(ProductModel::new)
-                .collect(Collectors.toList());
-        return ResponseEntity.ok(productModels);
+    ResponseEntity<List<ProductSummary>> all(
+            @RequestParam(required = false) String prefix,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false) String cursor
+    ) {
+        ProductPage productPage = productService.findPage(prefix, size, cursor);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (productPage.getNextCursor() != null) {
+            response.header(RecipeController.NEXT_CURSOR_HEADER, productPage.getNextCursor());
+        }
+        return response.body(productPage.getProducts());
     }
 
     @GetMapping("/get/{id}")
     @ResponseBody
-    ResponseEntity<ProductModel> one(@PathVariable Long id) {
-        Product product = productService.findById(id);
-        ProductModel productModel = new ProductModel(product);
+    ResponseEntity<ProductModel> one(@PathVariable Long id, WebRequest request) {
+        ProductModel productModel = productService.findModelById(id);
+        if (request.checkNotModified(String.format("\"product-%d-%d\"", id, productModel.getVersion()))) {
+            return null;
+        }
+        return ResponseEntity.ok().cacheControl(CacheControl.noCache()).body(productModel);
+    }
+
+    @GetMapping("/barcode/{code}")
+    @ResponseBody
+    ResponseEntity<ProductModel> byBarcode(@PathVariable String code) {
+        ProductModel productModel = productService.findModelByBarcode(code);
         return ResponseEntity.ok(productModel);
     }
 
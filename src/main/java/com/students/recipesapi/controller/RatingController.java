@@ -1,10 +1,14 @@
 package com.students.recipesapi.controller;
 
 import com.students.recipesapi.entity.Rating;
+import com.students.recipesapi.model.RatingAggregate;
 import com.students.recipesapi.model.RatingModel;
 import com.students.recipesapi.service.RatingService;
+import com.students.recipesapi.service.RecipeService;
+import org.springframework.http.CacheControl;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.security.Principal;
 import java.util.HashMap;
@@ -13,25 +17,30 @@ import java.util.HashMap;
 @RequestMapping("/ratings")
 public class RatingController {
     private final RatingService ratingService;
+    private final RecipeService recipeService;
 
-    public RatingController(RatingService ratingService) {
+    public RatingController(RatingService ratingService, RecipeService recipeService) {
         this.ratingService = ratingService;
+        this.recipeService = recipeService;
     }
 
     @GetMapping(value = "/get/forRecipe/{recipeId}", produces = "application/json")
-    ResponseEntity<HashMap<String, Object>> getAvgForRecipe(@PathVariable Long recipeId) {
+    ResponseEntity<HashMap<String, Object>> getAvgForRecipe(@PathVariable Long recipeId, WebRequest request) {
+        if (request.checkNotModified(RecipeController.recipeEtag("rating", recipeId, recipeService.findVersion(recipeId)))) {
+            return null;
+        }
         double avg = ratingService.getAvgForRecipe(recipeId);
         HashMap<String, Object> result = new HashMap<>();
         result.put("average", avg);
-        return ResponseEntity.ok(result);
+        return ResponseEntity.ok().cacheControl(CacheControl.noCache()).body(result);
     }
 
     @PostMapping(value = "/rate", consumes = "application/json", produces = "application/json")
     ResponseEntity<HashMap<String, Object>> create(@RequestBody RatingModel ratingModel, Principal principal) {
-        ratingService.rate(principal.getName(), ratingModel);
-        double avg = ratingService.getAvgForRecipe(ratingModel.getRecipeId());
+        RatingAggregate aggregate = ratingService.rate(principal.getName(), ratingModel);
         HashMap<String, Object> result = new HashMap<>();
-        result.put("average", avg);
+        result.put("average", aggregate.getAverage());
+        result.put("count", aggregate.getRatingCount());
         return ResponseEntity.ok(result);
     }
 
@@ -1,52 +1,99 @@
 package com.students.recipesapi.controller;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.students.recipesapi.entity.Recipe;
+import com.students.recipesapi.exception.InvalidInputException;
 import com.students.recipesapi.model.RecipeModel;
+import com.students.recipesapi.model.RecipePage;
 import com.students.recipesapi.model.RecipeResponse;
+import com.students.recipesapi.service.RecipeResponseCache;
 import com.students.recipesapi.service.RecipeService;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.security.Principal;
 import java.util.List;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/recipes")
 public class RecipeController {
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final String FULL_VIEW = "full";
+    private static final String SUMMARY_VIEW = "summary";
+
     private final RecipeService recipeService;
+    private final RecipeResponseCache responseCache;
+    private final ObjectMapper objectMapper;
 
-    RecipeController(RecipeService recipeService) {
+    RecipeController(RecipeService recipeService, RecipeResponseCache responseCache, ObjectMapper objectMapper) {
         this.recipeService = recipeService;
+        this.responseCache = responseCache;
+        this.objectMapper = objectMapper;
     }
 
     @GetMapping("/get/all")
     @ResponseBody
-    ResponseEntity<List<RecipeResponse>> all() {
-        List<RecipeResponse> recipes = recipeService
-                .findAll()
-                .stream()
-                .map(RecipeResponse::new)
-                .collect(Collectors.toList());
-        return ResponseEntity.ok(recipes);
+    ResponseEntity<? extends List<?>> all(@RequestParam(required = false) Integer page,
+                                          @RequestParam(required = false) Integer size,
+                                          @RequestParam(required = false) String cursor,
+                                          @RequestParam(defaultValue = FULL_VIEW) String view,
+                                          WebRequest request) {
+        boolean summaryView = isSummaryView(view);
+        RecipePage<Long> recipeIds = recipeService.findAllIds(page, size, cursor);
+        if (request.checkNotModified(String.format("\"recipes-%s-%s\"", view, recipeIds.getVersionTag()))) {
+            return null;
+        }
+        if (summaryView) {
+            return toPageResponse(recipeService.loadSummaryPage(recipeIds), Function.identity());
+        }
+        return toPageResponse(recipeService.loadRecipePage(recipeIds), RecipeResponse::new);
     }
 
+    /**
+     * Serves the recipe from the response cache when it's there, without touching the database. Otherwise the
+     * recipe is loaded, serialized once and cached for the following requests.
+     */
     @GetMapping("/get/{id}")
     @ResponseBody
-    ResponseEntity<RecipeResponse> one(@PathVariable Long id) {
-        RecipeResponse recipe = new RecipeResponse(recipeService.findById(id));
-        return ResponseEntity.ok(recipe);
+    ResponseEntity<byte[]> one(@PathVariable Long id, WebRequest request) throws JsonProcessingException {
+        RecipeResponseCache.Entry cached = responseCache.get(id);
+        if (cached == null) {
+            if (isRevalidation(request) && request.checkNotModified(recipeEtag("recipe", id, recipeService.findVersion(id)))) {
+                return null;
+            }
+            long generation = responseCache.generation();
+            Recipe recipe = recipeService.findById(id);
+            cached = new RecipeResponseCache.Entry(recipe.getVersion(), objectMapper.writeValueAsBytes(new RecipeResponse(recipe)));
+            responseCache.put(id, cached.getVersion(), cached.getJson(), generation);
+        } else if (request.checkNotModified(recipeEtag("recipe", id, cached.getVersion()))) {
+            return null;
+        }
+        return ResponseEntity
+                .ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(recipeEtag("recipe", id, cached.getVersion()))
+                .cacheControl(CacheControl.noCache())
+                .body(cached.getJson());
     }
 
     @GetMapping("/get")
     @ResponseBody
-    ResponseEntity<List<RecipeResponse>> query(@RequestParam String query, @RequestParam String sort, @RequestParam String direction) {
-        List<RecipeResponse> recipes = recipeService
-                .findByQuerySorted(query, sort, direction)
-                .stream()
-                .map(RecipeResponse::new)
-                .collect(Collectors.toList());
-        return ResponseEntity.ok(recipes);
+    ResponseEntity<? extends List<?>> query(@RequestParam String query, @RequestParam String sort, @RequestParam String direction,
+                                            @RequestParam(required = false) Integer page,
+                                            @RequestParam(required = false) Integer size,
+                                            @RequestParam(required = false) String cursor,
+                                            @RequestParam(defaultValue = FULL_VIEW) String view) {
+        if (isSummaryView(view)) {
+            return toPageResponse(recipeService.findSummariesByQuerySorted(query, sort, direction, page, size, cursor), Function.identity());
+        }
+        return toPageResponse(recipeService.findByQuerySorted(query, sort, direction, page, size, cursor), RecipeResponse::new);
     }
 
     @PostMapping(value = "/create", consumes = "application/json", produces = "application/json")
@@ -68,4 +115,42 @@ public class RecipeController {
         recipeService.delete(principal.getName(), recipeId);
         return ResponseEntity.ok("Successfully deleted the recipe.");
     }
+
+    /**
+     * Tells whether the client sent an ETag to compare against. Only then is the version looked up ahead of
+     * loading; a first request takes the version from the loaded data instead, saving the extra lookup.
+     */
+    static boolean isRevalidation(WebRequest request) {
+        return request.getHeader(HttpHeaders.IF_NONE_MATCH) != null;
+    }
+
+    /**
+     * Builds a strong ETag for a resource that changes together with the recipe's version, such as the recipe
+     * itself, its comments or its rating.
+     */
+    static String recipeEtag(String resource, Long recipeId, long version) {
+        return String.format("\"%s-%d-%d\"", resource, recipeId, version);
+    }
+
+    private static boolean isSummaryView(String view) {
+        if (view.equals(SUMMARY_VIEW)) return true;
+        if (view.equals(FULL_VIEW)) return false;
+        throw new InvalidInputException(String.format("Unknown view \"%s\".", view));
+    }
+
+    private <T, R> ResponseEntity<List<R>> toPageResponse(RecipePage<T> recipePage, Function<T, R> mapper) {
+        List<R> recipes = recipePage
+                .getRecipes()
+                .stream()
+                .map(mapper)
+                .collect(Collectors.toList());
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (recipePage.getVersionTag() != null) {
+            response.cacheControl(CacheControl.noCache());
+        }
+        if (recipePage.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, recipePage.getNextCursor());
+        }
+        return response.body(recipes);
+    }
 }
@@ -5,9 +5,11 @@ import lombok.Getter;
 import lombok.Setter;
 
 import javax.persistence.*;
+import java.time.LocalDateTime;
 import java.util.Objects;
 
 @Entity
+@Table(indexes = @Index(name = "idx_comment_recipe_creation_date", columnList = "recipe_id, creationDate, id"))
 @Getter
 @Setter
 public class Comment {
@@ -18,11 +20,11 @@ public class Comment {
     @Lob
     private String content;
 
-    private String creationDate;
-    private String modificationDate;
+    private LocalDateTime creationDate;
+    private LocalDateTime modificationDate;
 
     @JsonIgnore
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private Recipe recipe;
 
     @ManyToOne
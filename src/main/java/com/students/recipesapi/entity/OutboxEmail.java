@@ -0,0 +1,55 @@
+package com.students.recipesapi.entity;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * An e-mail waiting in the outbox. Request threads only insert these rows; EmailService sends them in the
+ * background and reschedules failed ones through {@link #nextAttemptAt}.
+ */
+@Entity
+@Table(indexes = @Index(name = "idx_outbox_email_status_next_attempt", columnList = "status, nextAttemptAt"))
+@Getter
+@Setter
+@NoArgsConstructor
+public class OutboxEmail {
+    public enum Status {
+        PENDING, SENT, FAILED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO)
+    private Long id;
+
+    private String recipient;
+    private String subject;
+
+    @Lob
+    @Basic(fetch = FetchType.EAGER)
+    private String body;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16)
+    private Status status;
+
+    private int attempts;
+    private LocalDateTime creationDate;
+    private LocalDateTime nextAttemptAt;
+    private LocalDateTime sentAt;
+
+    @Column(length = 1000)
+    private String lastError;
+
+    public OutboxEmail(String recipient, String subject, String body, LocalDateTime creationDate) {
+        this.recipient = recipient;
+        this.subject = subject;
+        this.body = body;
+        this.status = Status.PENDING;
+        this.creationDate = creationDate;
+        this.nextAttemptAt = creationDate;
+    }
+}
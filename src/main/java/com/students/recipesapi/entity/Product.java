@@ -1,47 +1,68 @@
 package com.students.recipesapi.entity;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
-import com.students.recipesapi.exception.Base64DecodingException;
-import lombok.AllArgsConstructor;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.BatchSize;
 
 import javax.persistence.*;
-import java.util.Base64;
-import java.util.Set;
+import java.util.Locale;
 
+/**
+ * Products are listed and filtered by {@link #normalizedName}, a trimmed lower case copy of the name kept in sync
+ * on every write, so that a name prefix search can use an index.
+ */
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_product_barcode", columnList = "barcode"),
+        @Index(name = "idx_product_normalized_name", columnList = "normalizedName, id"),
+        @Index(name = "idx_product_image_hash", columnList = "imageHash")
+})
 @Getter
 @Setter
 @NoArgsConstructor
-@AllArgsConstructor
+@BatchSize(size = 50)
 public class Product {
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO)
     private Long id;
 
     private String name;
+
+    @JsonIgnore
+    @Setter(AccessLevel.NONE)
+    private String normalizedName;
+
     private String barcode;
 
-    @Basic(fetch = FetchType.EAGER)
-    @Lob
-    private byte[] image;
+    @Column(length = 64)
+    private String imageHash;
 
     @ManyToOne
     private UserEntity author;
 
-    public void setImage(String imageInBase64) {
-        if (imageInBase64 == null) return;
-        try {
-            image = Base64.getDecoder().decode(imageInBase64);
-        } catch (Exception e) {
-            throw new Base64DecodingException("Failed to decode Base64 string.");
-        }
+    @JsonIgnore
+    @Version
+    private Long version;
+
+    public Product(Long id, String name, String barcode, String imageHash, UserEntity author) {
+        this.id = id;
+        this.name = name;
+        this.barcode = barcode;
+        this.imageHash = imageHash;
+        this.author = author;
     }
 
-    @JsonIgnore
-    public String getImageBase64() {
-        return Base64.getEncoder().encodeToString(image);
+    @PrePersist
+    @PreUpdate
+    void normalizeName() {
+        normalizedName = normalizeName(name);
+    }
+
+    public static String normalizeName(String name) {
+        if (name == null) return "";
+        return name.trim().toLowerCase(Locale.ROOT);
     }
 }
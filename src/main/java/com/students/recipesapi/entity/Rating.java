@@ -8,6 +8,7 @@ import lombok.Setter;
 import javax.persistence.*;
 
 @Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_rating_recipe_user", columnNames = {"recipe_id", "user_id"}))
 @Getter
 @Setter
 @AllArgsConstructor
@@ -20,7 +21,7 @@ public class Rating {
     @ManyToOne
     private UserEntity user;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private Recipe recipe;
 
     @Column
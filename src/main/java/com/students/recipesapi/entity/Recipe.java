@@ -1,25 +1,52 @@
 package com.students.recipesapi.entity;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
-import com.students.recipesapi.exception.Base64DecodingException;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
-import org.hibernate.annotations.LazyCollection;
-import org.hibernate.annotations.LazyCollectionOption;
+import org.hibernate.annotations.BatchSize;
 
 import javax.persistence.*;
+import java.time.LocalDateTime;
 import java.util.*;
 
+/**
+ * Every association is lazy; queries pick what they need through one of the named entity graphs:
+ * {@link #DETAIL_GRAPH} for single recipes and pages of recipes with everything RecipeResponse shows except the
+ * tags, which come in one extra batched select instead of multiplying the joined rows, and {@link #EDIT_GRAPH}
+ * with just the author, which updates and deletes need for authorization.
+ * A {@link #deleted} recipe is hidden from every query while its comments and ratings are being purged.
+ * {@link #version} changes whenever anything shown by RecipeResponse, the recipe's comments or its rating changes,
+ * including its products and the users shown with it, and serves as the ETag of those responses.
+ */
 @Entity
+@NamedEntityGraph(name = Recipe.DETAIL_GRAPH,
+        attributeNodes = {
+                @NamedAttributeNode("author"),
+                @NamedAttributeNode(value = "ingredients", subgraph = "ingredientProducts")
+        },
+        subgraphs = {
+                @NamedSubgraph(name = "ingredientProducts", attributeNodes = @NamedAttributeNode(value = "product", subgraph = "productAuthor")),
+                @NamedSubgraph(name = "productAuthor", attributeNodes = @NamedAttributeNode("author"))
+        })
+@NamedEntityGraph(name = Recipe.EDIT_GRAPH, attributeNodes = @NamedAttributeNode("author"))
+@Table(indexes = {
+        @Index(name = "idx_recipe_creation_date", columnList = "creationDate, id"),
+        @Index(name = "idx_recipe_modification_date", columnList = "modificationDate, id"),
+        @Index(name = "idx_recipe_image_hash", columnList = "imageHash")
+})
 @Getter
 @Setter
 @NoArgsConstructor
 @AllArgsConstructor
 public class Recipe {
+    public static final String DETAIL_GRAPH = "Recipe.detail";
+    public static final String EDIT_GRAPH = "Recipe.edit";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "recipe_sequence")
+    @SequenceGenerator(name = "recipe_sequence", sequenceName = "recipe_sequence", allocationSize = 50)
     private Long id;
 
     private String title;
@@ -28,39 +55,32 @@ public class Recipe {
     @Basic(fetch = FetchType.EAGER)
     private String description;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private UserEntity author;
 
-    @OneToMany(mappedBy = "recipe", fetch = FetchType.EAGER)
+    @OneToMany(mappedBy = "recipe")
     private Set<RecipeIngredient> ingredients;
 
-    @ElementCollection(fetch = FetchType.EAGER)
+    @ElementCollection
+    @CollectionTable(indexes = @Index(name = "idx_recipe_tags_recipe", columnList = "recipe_id"))
+    @BatchSize(size = 100)
     private Set<String> tags = new LinkedHashSet<>();
 
-    @Lob
-    @Basic(fetch = FetchType.EAGER)
-    private byte[] image;
+    @Column(length = 64)
+    private String imageHash;
 
-    private String creationDate;
-    private String modificationDate;
+    private LocalDateTime creationDate;
+    private LocalDateTime modificationDate;
 
     private Double rating = 0.0;
+    private Double ratingSum = 0.0;
+    private Long ratingCount = 0L;
 
-    public void setImage(String imageInBase64) {
-        if (imageInBase64 == null) return;
-        try {
-            image = Base64.getDecoder().decode(imageInBase64);
-        } catch (Exception e) {
-            throw new Base64DecodingException("Failed to decode Base64 string.");
-        }
-    }
+    private Long commentCount = 0L;
 
-    @JsonIgnore
-    public String getImageBase64() {
-        return Base64.getEncoder().encodeToString(image);
-    }
+    private boolean deleted;
 
-    public void setImage(byte[] image) {
-        this.image = image;
-    }
+    @JsonIgnore
+    @Version
+    private Long version;
 }
@@ -9,6 +9,7 @@ import lombok.Setter;
 import javax.persistence.*;
 
 @Entity
+@Table(indexes = @Index(name = "idx_recipe_ingredient_recipe_product", columnList = "recipe_id, product_id"))
 @Getter
 @Setter
 @AllArgsConstructor
@@ -18,13 +19,13 @@ public class RecipeIngredient {
     @JsonIgnore
     RecipeIngredientKey id;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @MapsId("recipeId")
     @JoinColumn(name = "recipe_id")
     @JsonIgnore
     Recipe recipe;
 
-    @ManyToOne(fetch = FetchType.EAGER)
+    @ManyToOne(fetch = FetchType.LAZY)
     @MapsId("productId")
     @JoinColumn(name = "product_id")
     Product product;
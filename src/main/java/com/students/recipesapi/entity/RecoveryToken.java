@@ -9,6 +9,7 @@ import javax.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
+@Table(indexes = @Index(name = "idx_recovery_token_expiration_date", columnList = "expirationDate"))
 @Getter
 @Setter
 @AllArgsConstructor
@@ -0,0 +1,33 @@
+package com.students.recipesapi.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.*;
+import java.sql.Blob;
+import java.time.LocalDateTime;
+
+/**
+ * Image bytes kept apart from the entities that show them and addressed by the SHA-256 hash of their content,
+ * so identical uploads are stored once and the hash doubles as a strong ETag. The bytes are mapped as a
+ * {@link Blob}, so loading the row only yields a locator and the data is read as a stream on demand.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class StoredImage {
+    @Id
+    @Column(length = 64)
+    private String hash;
+
+    private String contentType;
+    private Long size;
+    private LocalDateTime creationDate;
+
+    @Lob
+    private Blob data;
+}
@@ -1,19 +1,23 @@
 package com.students.recipesapi.entity;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 
-import javax.persistence.Entity;
-import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
-import javax.persistence.Id;
+import javax.persistence.*;
 import java.util.Collection;
+import java.util.Locale;
 
+/**
+ * Users are looked up by {@link #normalizedUsername}, a trimmed lower case copy of the username kept in sync
+ * on every write. Removed accounts have an empty username and no normalized one, so they never collide.
+ */
 @Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_user_normalized_username", columnNames = "normalizedUsername"))
 @Getter
 @Setter
 @NoArgsConstructor
@@ -23,6 +27,11 @@ public class UserEntity implements UserDetails {
     private Long id;
 
     private String username;
+
+    @JsonIgnore
+    @Setter(AccessLevel.NONE)
+    private String normalizedUsername;
+
     private String firstName;
     private String lastName;
 
@@ -63,6 +72,17 @@ public class UserEntity implements UserDetails {
         return enabled;
     }
 
+    @PrePersist
+    @PreUpdate
+    void normalizeUsername() {
+        normalizedUsername = normalizeUsername(username);
+    }
+
+    public static String normalizeUsername(String username) {
+        if (username == null || username.trim().isEmpty()) return null;
+        return username.trim().toLowerCase(Locale.ROOT);
+    }
+
     public UserEntity(String username, String firstName, String lastName, String password) {
         this.username = username;
         this.firstName = firstName;
@@ -0,0 +1,20 @@
+package com.students.recipesapi.migration;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * A migration step that can't be written as portable SQL. Implementations are Spring components and are
+ * applied by {@link SchemaMigrator} in version order together with the SQL scripts, so a version must not
+ * be used by a script as well. They run before the entity manager exists and work on plain JDBC only.
+ */
+public interface JavaMigration {
+    int getVersion();
+
+    String getDescription();
+
+    /**
+     * Applies the step on {@code connection}, inside the transaction that records it as applied.
+     */
+    void migrate(Connection connection) throws SQLException;
+}
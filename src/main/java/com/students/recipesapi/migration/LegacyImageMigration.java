@@ -0,0 +1,78 @@
+package com.students.recipesapi.migration;
+
+import com.students.recipesapi.service.ImageService;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Moves the images stored inline in the recipe and product rows into {@code stored_image} and points the rows
+ * at them by hash. The hash and content type are computed the way {@link ImageService} computes them for
+ * uploads, which SQL can't do portably. Thumbnails of the moved images are generated on first request.
+ */
+@Component
+public class LegacyImageMigration implements JavaMigration {
+    @Override
+    public int getVersion() {
+        return 14;
+    }
+
+    @Override
+    public String getDescription() {
+        return "legacy images";
+    }
+
+    @Override
+    public void migrate(Connection connection) throws SQLException {
+        boolean postgres = connection.getMetaData().getDatabaseProductName().equalsIgnoreCase("PostgreSQL");
+        moveImages(connection, "recipe");
+        moveImages(connection, "product");
+        if (postgres) {
+            // The columns are dropped next, which would leave their large objects behind
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SELECT lo_unlink(image) FROM recipe WHERE image IS NOT NULL");
+                statement.execute("SELECT lo_unlink(image) FROM product WHERE image IS NOT NULL");
+            }
+        }
+    }
+
+    private static void moveImages(Connection connection, String table) throws SQLException {
+        String select = "SELECT id, image FROM " + table + " WHERE image IS NOT NULL";
+        String update = "UPDATE " + table + " SET image_hash = ? WHERE id = ?";
+        try (Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery(select);
+             PreparedStatement updateHash = connection.prepareStatement(update)) {
+            while (rows.next()) {
+                Blob image = rows.getBlob("image");
+                byte[] data = image.getBytes(1, (int) image.length());
+                if (data.length == 0) continue;
+                String hash = ImageService.hash(data);
+                insertIfAbsent(connection, hash, data);
+                updateHash.setString(1, hash);
+                updateHash.setLong(2, rows.getLong("id"));
+                updateHash.executeUpdate();
+            }
+        }
+    }
+
+    private static void insertIfAbsent(Connection connection, String hash, byte[] data) throws SQLException {
+        try (PreparedStatement exists = connection.prepareStatement("SELECT 1 FROM stored_image WHERE hash = ?")) {
+            exists.setString(1, hash);
+            try (ResultSet result = exists.executeQuery()) {
+                if (result.next()) return;
+            }
+        }
+        String sql = "INSERT INTO stored_image (hash, content_type, size, creation_date, data) VALUES (?, ?, ?, ?, ?)";
+        try (PreparedStatement insert = connection.prepareStatement(sql)) {
+            insert.setString(1, hash);
+            insert.setString(2, ImageService.guessContentType(data));
+            insert.setLong(3, data.length);
+            insert.setTimestamp(4, Timestamp.valueOf(LocalDateTime.now(ZoneId.of("Europe/Warsaw"))));
+            insert.setBlob(5, new ByteArrayInputStream(data), data.length);
+            insert.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.students.recipesapi.migration;
+
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Lets PostgreSQL serve the product name prefix filter, {@code normalized_name LIKE 'prefix%'}, from an index.
+ * The (normalized_name, id) index follows the database collation, which PostgreSQL only uses for LIKE under the
+ * C locale, so the prefix filter gets a second index with {@code text_pattern_ops}. H2 already uses the plain
+ * index for prefix patterns and has no operator classes, so nothing is created there.
+ */
+@Component
+public class ProductNamePatternIndexMigration implements JavaMigration {
+    @Override
+    public int getVersion() {
+        return 16;
+    }
+
+    @Override
+    public String getDescription() {
+        return "product name pattern index";
+    }
+
+    @Override
+    public void migrate(Connection connection) throws SQLException {
+        if (!connection.getMetaData().getDatabaseProductName().equalsIgnoreCase("PostgreSQL")) return;
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE INDEX idx_product_normalized_name_pattern ON product (normalized_name text_pattern_ops)");
+        }
+    }
+}
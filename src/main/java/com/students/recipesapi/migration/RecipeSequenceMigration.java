@@ -0,0 +1,42 @@
+package com.students.recipesapi.migration;
+
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Creates the sequence that hands out recipe ids in blocks of 50. Existing recipes took their ids from
+ * {@code hibernate_sequence}, so the new sequence starts past the largest of them; neither database accepts
+ * a query as the start value, hence the code.
+ */
+@Component
+public class RecipeSequenceMigration implements JavaMigration {
+    private static final int ALLOCATION_SIZE = 50;
+
+    @Override
+    public int getVersion() {
+        return 5;
+    }
+
+    @Override
+    public String getDescription() {
+        return "recipe sequence";
+    }
+
+    @Override
+    public void migrate(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            long maxId;
+            try (ResultSet result = statement.executeQuery("SELECT COALESCE(MAX(id), 0) FROM recipe")) {
+                result.next();
+                maxId = result.getLong(1);
+            }
+            // The pooled optimizer hands out the ids below the value it reads, so the first one has to leave room.
+            long start = maxId + ALLOCATION_SIZE + 1;
+            statement.execute("CREATE SEQUENCE recipe_sequence START WITH " + start + " INCREMENT BY " + ALLOCATION_SIZE);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.students.recipesapi.migration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.data.jpa.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.EncodedResource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+import org.springframework.util.StreamUtils;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Brings the database schema up to date on startup, before Hibernate validates it against the entities.
+ * Migrations are the {@code db/migration/V<version>__<description>.sql} scripts on the classpath. They are
+ * applied in version order, each in its own transaction, and recorded in the {@code schema_version} table so
+ * that every script runs once per database. A script that was changed after it was applied fails the startup.
+ * <p>
+ * {@code ${blob_type}} in a script is replaced with the column type Hibernate uses for {@code @Lob} binary data
+ * on the current database. Steps that can't be written as portable SQL are {@link JavaMigration} components.
+ * A database created by {@code ddl-auto=create} before migrations existed already has the version 1 schema and
+ * is baselined at version 1 instead of running it.
+ */
+@Configuration
+public class SchemaMigrator {
+    private static final Logger log = LoggerFactory.getLogger(SchemaMigrator.class);
+    private static final String LOCATION = "classpath*:db/migration/*.sql";
+    private static final Pattern SCRIPT_NAME = Pattern.compile("V(\\d+)__(\\w+)\\.sql");
+
+    private final DataSource dataSource;
+    private final List<JavaMigration> javaMigrations;
+
+    public SchemaMigrator(DataSource dataSource, List<JavaMigration> javaMigrations) {
+        this.dataSource = dataSource;
+        this.javaMigrations = javaMigrations;
+    }
+
+    /**
+     * Makes the entity manager factory, and with it Hibernate's schema validation, wait for the migrations.
+     */
+    @Bean
+    static EntityManagerFactoryDependsOnPostProcessor entityManagerFactoryDependsOnSchemaMigrator() {
+        return new EntityManagerFactoryDependsOnPostProcessor(SchemaMigrator.class);
+    }
+
+    @PostConstruct
+    public void migrate() {
+        List<Migration> migrations = findMigrations();
+        try (Connection connection = dataSource.getConnection()) {
+            Map<Integer, Integer> applied = findAppliedVersions(connection);
+            Map<String, String> placeholders = placeholdersFor(connection);
+            for (Migration migration : migrations) {
+                Integer checksum = applied.get(migration.version);
+                if (checksum == null) {
+                    apply(connection, migration, placeholders);
+                } else if (checksum != 0 && checksum != migration.checksum) {
+                    throw new IllegalStateException(String.format(
+                            "Migration %s was changed after it was applied.", migration.name));
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to migrate the database schema.", e);
+        }
+    }
+
+    private List<Migration> findMigrations() {
+        List<Migration> migrations = new ArrayList<>();
+        Set<Integer> versions = new HashSet<>();
+        try {
+            for (Resource resource : new PathMatchingResourcePatternResolver().getResources(LOCATION)) {
+                Matcher name = SCRIPT_NAME.matcher(Objects.requireNonNull(resource.getFilename()));
+                if (!name.matches()) {
+                    throw new IllegalStateException("Unexpected migration file name: " + resource.getFilename());
+                }
+                int version = Integer.parseInt(name.group(1));
+                if (!versions.add(version)) {
+                    throw new IllegalStateException("Duplicate migration version: " + version);
+                }
+                String script;
+                try (InputStream in = resource.getInputStream()) {
+                    script = StreamUtils.copyToString(in, StandardCharsets.UTF_8);
+                }
+                migrations.add(new Migration(version, name.group(2).replace('_', ' '), resource.getFilename(), script, null));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read the database migrations.", e);
+        }
+        for (JavaMigration javaMigration : javaMigrations) {
+            if (!versions.add(javaMigration.getVersion())) {
+                throw new IllegalStateException("Duplicate migration version: " + javaMigration.getVersion());
+            }
+            migrations.add(new Migration(javaMigration.getVersion(), javaMigration.getDescription(),
+                    javaMigration.getClass().getSimpleName(), null, javaMigration));
+        }
+        migrations.sort(Comparator.comparingInt(migration -> migration.version));
+        return migrations;
+    }
+
+    /**
+     * Returns the checksums of the applied migrations by version, creating the history table first if needed.
+     * A baselined migration has checksum 0.
+     */
+    private Map<Integer, Integer> findAppliedVersions(Connection connection) throws SQLException {
+        if (!tableExists(connection, "schema_version")) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE schema_version (" +
+                        "version int4 NOT NULL, " +
+                        "description varchar(255) NOT NULL, " +
+                        "checksum int4 NOT NULL, " +
+                        "applied_at timestamp NOT NULL, " +
+                        "PRIMARY KEY (version))");
+            }
+            if (tableExists(connection, "user_entity")) {
+                log.info("Baselining the existing schema at version 1");
+                record(connection, 1, "baseline", 0);
+            }
+        }
+
+        Map<Integer, Integer> applied = new HashMap<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet versions = statement.executeQuery("SELECT version, checksum FROM schema_version")) {
+            while (versions.next()) {
+                applied.put(versions.getInt("version"), versions.getInt("checksum"));
+            }
+        }
+        return applied;
+    }
+
+    private void apply(Connection connection, Migration migration, Map<String, String> placeholders) throws SQLException {
+        log.info("Migrating the schema to version {} - {}", migration.version, migration.description);
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            if (migration.javaMigration != null) {
+                migration.javaMigration.migrate(connection);
+            } else {
+                String script = migration.script;
+                for (Map.Entry<String, String> placeholder : placeholders.entrySet()) {
+                    script = script.replace("${" + placeholder.getKey() + "}", placeholder.getValue());
+                }
+                Resource resolved = new ByteArrayResource(script.getBytes(StandardCharsets.UTF_8), migration.name);
+                ScriptUtils.executeSqlScript(connection, new EncodedResource(resolved, StandardCharsets.UTF_8));
+            }
+            record(connection, migration.version, migration.description, migration.checksum);
+            connection.commit();
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            throw new IllegalStateException(String.format("Migration %s failed.", migration.name), e);
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static void record(Connection connection, int version, String description, int checksum) throws SQLException {
+        String sql = "INSERT INTO schema_version (version, description, checksum, applied_at) VALUES (?, ?, ?, ?)";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setInt(1, version);
+            statement.setString(2, description);
+            statement.setInt(3, checksum);
+            statement.setTimestamp(4, new Timestamp(System.currentTimeMillis()));
+            statement.executeUpdate();
+        }
+    }
+
+    private static Map<String, String> placeholdersFor(Connection connection) throws SQLException {
+        boolean postgres = connection.getMetaData().getDatabaseProductName().equalsIgnoreCase("PostgreSQL");
+        return Collections.singletonMap("blob_type", postgres ? "oid" : "blob");
+    }
+
+    private static boolean tableExists(Connection connection, String table) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        String storedTable = metaData.storesUpperCaseIdentifiers() ? table.toUpperCase(Locale.ROOT) : table;
+        try (ResultSet tables = metaData.getTables(connection.getCatalog(), connection.getSchema(), storedTable, new String[]{"TABLE"})) {
+            return tables.next();
+        }
+    }
+
+    private static class Migration {
+        private final int version;
+        private final String description;
+        private final String name;
+        private final String script;
+        private final JavaMigration javaMigration;
+        private final int checksum;
+
+        private Migration(int version, String description, String name, String script, JavaMigration javaMigration) {
+            this.version = version;
+            this.description = description;
+            this.name = name;
+            this.script = script;
+            this.javaMigration = javaMigration;
+            this.checksum = script != null ? checksumOf(script) : 1;
+        }
+
+        private static int checksumOf(String script) {
+            CRC32 crc = new CRC32();
+            crc.update(script.getBytes(StandardCharsets.UTF_8));
+            // 0 marks a baselined migration
+            return (int) crc.getValue() == 0 ? 1 : (int) crc.getValue();
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.students.recipesapi.model;
+
+import com.students.recipesapi.entity.Comment;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * One page of a recipe's comments, with the version of the recipe they were read at. The version is null when
+ * the recipe doesn't exist.
+ */
+@Getter
+@AllArgsConstructor
+public class CommentPage {
+    private final List<Comment> comments;
+    private final String nextCursor;
+    private final Long recipeVersion;
+}
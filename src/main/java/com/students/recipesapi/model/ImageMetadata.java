@@ -0,0 +1,15 @@
+package com.students.recipesapi.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+
+@Getter
+@AllArgsConstructor
+public class ImageMetadata {
+    private final String hash;
+    private final String contentType;
+    private final Long size;
+    private final LocalDateTime creationDate;
+}
@@ -0,0 +1,16 @@
+package com.students.recipesapi.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.InputStream;
+
+/**
+ * An image uploaded as a stream, either as raw bytes or as Base64 text.
+ */
+@Getter
+@AllArgsConstructor
+public class ImageUpload {
+    private final InputStream data;
+    private final boolean base64Encoded;
+}
@@ -0,0 +1,28 @@
+package com.students.recipesapi.model;
+
+import com.students.recipesapi.exception.InvalidInputException;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Locale;
+
+@Getter
+@AllArgsConstructor
+public enum ImageVariant {
+    ORIGINAL(Integer.MAX_VALUE),
+    MEDIUM(480),
+    THUMBNAIL(160);
+
+    /**
+     * Length of the longer image side the variant is scaled down to.
+     */
+    private final int maxDimension;
+
+    public static ImageVariant fromParameter(String size) {
+        try {
+            return valueOf(size.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidInputException(String.format("Unknown image size \"%s\".", size));
+        }
+    }
+}
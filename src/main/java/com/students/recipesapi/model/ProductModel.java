@@ -1,11 +1,11 @@
 package com.students.recipesapi.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.students.recipesapi.entity.Product;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
-import org.postgresql.util.Base64;
 
 @Getter
 @Setter
@@ -16,15 +16,27 @@ public class ProductModel {
     public String name;
     public String barcode;
     public String image;
+    public String imageUrl;
+    public String imageHash;
+
+    @JsonIgnore
+    public Long version;
+
+    public ProductModel(Long id, String name, String barcode, String image) {
+        this.id = id;
+        this.name = name;
+        this.barcode = barcode;
+        this.image = image;
+    }
 
     public ProductModel(Product product) {
         this.id = product.getId();
         this.name = product.getName();
         this.barcode = product.getBarcode();
-        if (product.getImage() != null) {
-            this.image = Base64.encodeBytes(product.getImage());
-        } else {
-            this.image = "";
+        this.version = product.getVersion();
+        if (product.getImageHash() != null) {
+            this.imageUrl = String.format("/products/%d/image", product.getId());
+            this.imageHash = product.getImageHash();
         }
     }
 }
@@ -0,0 +1,13 @@
+package com.students.recipesapi.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+public class ProductPage {
+    private final List<ProductSummary> products;
+    private final String nextCursor;
+}
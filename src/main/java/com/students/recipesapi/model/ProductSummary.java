@@ -0,0 +1,24 @@
+package com.students.recipesapi.model;
+
+import lombok.Getter;
+
+/**
+ * List view of a product, read through a constructor query. The image is referenced by URL instead of being
+ * embedded.
+ */
+@Getter
+public class ProductSummary {
+    private final Long id;
+    private final String name;
+    private final String barcode;
+    private final String imageUrl;
+    private final String imageHash;
+
+    public ProductSummary(Long id, String name, String barcode, String imageHash) {
+        this.id = id;
+        this.name = name;
+        this.barcode = barcode;
+        this.imageUrl = imageHash == null ? null : String.format("/products/%d/image", id);
+        this.imageHash = imageHash;
+    }
+}
@@ -0,0 +1,25 @@
+package com.students.recipesapi.model;
+
+import lombok.Getter;
+
+/**
+ * The rating sum and count kept on a recipe, from which its average rating is derived.
+ */
+@Getter
+public class RatingAggregate {
+    private final double ratingSum;
+    private final long ratingCount;
+
+    public RatingAggregate(Double ratingSum, Long ratingCount) {
+        this.ratingSum = ratingSum == null ? 0.0 : ratingSum;
+        this.ratingCount = ratingCount == null ? 0L : ratingCount;
+    }
+
+    public RatingAggregate plus(double sumDelta, long countDelta) {
+        return new RatingAggregate(ratingSum + sumDelta, ratingCount + countDelta);
+    }
+
+    public double getAverage() {
+        return ratingCount == 0 ? 0.0 : ratingSum / ratingCount;
+    }
+}
@@ -0,0 +1,34 @@
+package com.students.recipesapi.model;
+
+import com.students.recipesapi.exception.InvalidInputException;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque keyset position in a sorted recipe listing: the sort value and id of the last recipe a client has seen.
+ */
+@Getter
+@AllArgsConstructor
+public class RecipeCursor {
+    private final Long id;
+    private final String value;
+
+    public String encode() {
+        String raw = value == null ? id.toString() : id + ":" + value;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static RecipeCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(':');
+            if (separator < 0) return new RecipeCursor(Long.valueOf(raw), null);
+            return new RecipeCursor(Long.valueOf(raw.substring(0, separator)), raw.substring(separator + 1));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidInputException("Invalid page cursor.");
+        }
+    }
+}
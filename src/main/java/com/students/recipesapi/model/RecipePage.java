@@ -0,0 +1,23 @@
+package com.students.recipesapi.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * One page of a recipe listing. Pages read from the database carry a {@link #versionTag} that changes with
+ * the page's recipes, their order and the next cursor; ranked search pages have none.
+ */
+@Getter
+@AllArgsConstructor
+public class RecipePage<T> {
+    private final List<T> recipes;
+    private final String nextCursor;
+    private final String versionTag;
+
+    public <R> RecipePage<R> map(Function<List<T>, List<R>> mapper) {
+        return new RecipePage<>(mapper.apply(recipes), nextCursor, versionTag);
+    }
+}
@@ -25,7 +25,9 @@ public class RecipeResponse {
     private List<Product> ingredients;
     private List<String> quantities;
     private Set<String> tags;
-    private String image;
+    private String imageUrl;
+    private String imageHash;
+    private Long commentCount;
 
     public RecipeResponse(Recipe recipe) {
         this.id = recipe.getId();
@@ -35,6 +37,8 @@ public class RecipeResponse {
         this.ingredients = recipe.getIngredients().stream().map(RecipeIngredient::getProduct).collect(Collectors.toList());
         this.quantities = recipe.getIngredients().stream().map(RecipeIngredient::getQuantity).collect(Collectors.toList());
         this.tags = recipe.getTags();
-        this.image = recipe.getImageBase64();
+        this.imageUrl = String.format("/recipes/%d/image", recipe.getId());
+        this.imageHash = recipe.getImageHash();
+        this.commentCount = recipe.getCommentCount();
     }
 }
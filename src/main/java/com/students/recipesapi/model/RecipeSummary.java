@@ -0,0 +1,36 @@
+package com.students.recipesapi.model;
+
+import lombok.Getter;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * List view of a recipe, read through a constructor query so that neither the description, the image
+ * nor the ingredients are loaded.
+ */
+@Getter
+public class RecipeSummary {
+    private final Long id;
+    private final String title;
+    private final String authorName;
+    private final Set<String> tags = new LinkedHashSet<>();
+    private final Double rating;
+    private final Long commentCount;
+    private final String thumbnailUrl;
+
+    public RecipeSummary(Long id, String title, String authorFirstName, String authorLastName, String imageHash, Double rating, Long commentCount) {
+        this.id = id;
+        this.title = title;
+        this.authorName = authorName(authorFirstName, authorLastName);
+        this.rating = rating;
+        this.commentCount = commentCount;
+        this.thumbnailUrl = imageHash == null ? null : String.format("/recipes/%d/image?size=thumbnail", id);
+    }
+
+    private static String authorName(String firstName, String lastName) {
+        if (firstName == null) return lastName;
+        if (lastName == null) return firstName;
+        return firstName + " " + lastName;
+    }
+}
@@ -1,23 +1,40 @@
 package com.students.recipesapi.repository;
 
 import com.students.recipesapi.entity.Comment;
-import com.students.recipesapi.entity.Product;
-import com.students.recipesapi.entity.UserEntity;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 public interface CommentRepository extends JpaRepository<Comment, Long>, CommentRepositoryCustom {
+    @Query("SELECT c.id FROM Comment c WHERE c.recipe.id = :recipeId")
+    List<Long> findIdsByRecipeId(@Param("recipeId") Long recipeId, Pageable pageable);
+
+    @Modifying
+    @Query("DELETE FROM Comment c WHERE c.recipe.id = :recipeId")
+    int deleteByRecipeId(@Param("recipeId") Long recipeId);
+
+    @Modifying
+    @Query("DELETE FROM Comment c WHERE c.id IN :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
 }
 
 
 interface CommentRepositoryCustom {
     @Transactional
     List<Comment> findForRecipe(Long recipeId);
+
+    List<Object[]> findPageForRecipe(Long recipeId, LocalDateTime afterCreationDate, Long afterId, int limit);
 }
 
 class CommentRepositoryImpl implements CommentRepositoryCustom {
@@ -25,10 +42,36 @@ class CommentRepositoryImpl implements CommentRepositoryCustom {
     EntityManager entityManager;
 
     public List<Comment> findForRecipe(Long recipeId) {
-        String query = "SELECT c FROM Comment c WHERE c.recipe.id = :recipeId";
+        String query = "SELECT c FROM Comment c LEFT JOIN FETCH c.author " +
+                "WHERE c.recipe.id = :recipeId AND c.recipe.deleted = false " +
+                "ORDER BY c.creationDate, c.id";
         return entityManager
-            .createQuery(query)
+            .createQuery(query, Comment.class)
             .setParameter("recipeId", recipeId)
             .getResultList();
    }
+
+    /**
+     * Returns comments of the recipe in creation order, starting after the given position when one is provided,
+     * each as a (comment, recipe version) pair. Authors are fetched in the same query, and the
+     * (recipe, creation date, id) index serves both the filter and the ordering.
+     */
+    public List<Object[]> findPageForRecipe(Long recipeId, LocalDateTime afterCreationDate, Long afterId, int limit) {
+        StringBuilder jpql = new StringBuilder("SELECT c, r.version FROM Comment c JOIN c.recipe r LEFT JOIN FETCH c.author " +
+                "WHERE r.id = :recipeId AND r.deleted = false ");
+        if (afterId != null) {
+            jpql.append("AND (c.creationDate > :afterCreationDate OR (c.creationDate = :afterCreationDate AND c.id > :afterId)) ");
+        }
+        jpql.append("ORDER BY c.creationDate, c.id");
+
+        TypedQuery<Object[]> query = entityManager
+                .createQuery(jpql.toString(), Object[].class)
+                .setParameter("recipeId", recipeId)
+                .setMaxResults(limit);
+        if (afterId != null) {
+            query.setParameter("afterCreationDate", afterCreationDate);
+            query.setParameter("afterId", afterId);
+        }
+        return query.getResultList();
+    }
 }
\ No newline at end of file
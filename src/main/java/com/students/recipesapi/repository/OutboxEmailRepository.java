@@ -0,0 +1,35 @@
+package com.students.recipesapi.repository;
+
+import com.students.recipesapi.entity.OutboxEmail;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface OutboxEmailRepository extends JpaRepository<OutboxEmail, Long> {
+    @Query("SELECT e FROM OutboxEmail e WHERE e.status = :status AND e.nextAttemptAt <= :now ORDER BY e.nextAttemptAt, e.id")
+    List<OutboxEmail> findDue(@Param("status") OutboxEmail.Status status, @Param("now") LocalDateTime now, Pageable pageable);
+
+    /**
+     * Claims a message read as due by moving its next attempt to {@code claimedUntil}, unless another poll changed
+     * the row since it was read. Returns 0 when the message is not claimed by this call.
+     */
+    @Modifying
+    @Query("UPDATE OutboxEmail e SET e.nextAttemptAt = :claimedUntil " +
+            "WHERE e.id = :id AND e.status = :status AND e.nextAttemptAt = :dueAt")
+    int claim(@Param("id") Long id, @Param("status") OutboxEmail.Status status, @Param("dueAt") LocalDateTime dueAt, @Param("claimedUntil") LocalDateTime claimedUntil);
+
+    /**
+     * Makes claimed messages that were never handed to a worker due again.
+     */
+    @Modifying
+    @Query("UPDATE OutboxEmail e SET e.nextAttemptAt = :dueAt WHERE e.id IN :ids AND e.status = :status")
+    int release(@Param("ids") Collection<Long> ids, @Param("status") OutboxEmail.Status status, @Param("dueAt") LocalDateTime dueAt);
+
+    long countByStatus(OutboxEmail.Status status);
+}
@@ -1,7 +1,66 @@
 package com.students.recipesapi.repository;
 
 import com.students.recipesapi.entity.Product;
+import com.students.recipesapi.model.ProductSummary;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
-public interface ProductRepository extends JpaRepository<Product, Long> {
-}
\ No newline at end of file
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface ProductRepository extends JpaRepository<Product, Long>, ProductRepositoryCustom {
+    @Query("SELECT p FROM Product p LEFT JOIN FETCH p.author WHERE p.id IN :ids")
+    List<Product> findAllWithAuthorByIdIn(@Param("ids") Collection<Long> ids);
+
+    Optional<Product> findFirstByBarcodeOrderByIdAsc(String barcode);
+}
+
+
+interface ProductRepositoryCustom {
+    List<ProductSummary> findPage(String namePrefix, String afterName, Long afterId, int limit);
+}
+
+class ProductRepositoryImpl implements ProductRepositoryCustom {
+    @PersistenceContext
+    EntityManager entityManager;
+
+    /**
+     * Reads one page of products ordered by normalized name, optionally limited to names starting with the
+     * given normalized prefix, without loading images or authors. On PostgreSQL the prefix is matched through
+     * the text_pattern_ops index created by the version 16 migration.
+     */
+    public List<ProductSummary> findPage(String namePrefix, String afterName, Long afterId, int limit) {
+        List<String> conditions = new ArrayList<>();
+        if (namePrefix != null) {
+            conditions.add("p.normalizedName LIKE :namePrefix ESCAPE '!'");
+        }
+        if (afterId != null) {
+            conditions.add("(p.normalizedName > :afterName OR (p.normalizedName = :afterName AND p.id > :afterId))");
+        }
+        StringBuilder jpql = new StringBuilder("SELECT new com.students.recipesapi.model.ProductSummary(p.id, p.name, p.barcode, p.imageHash) " +
+                "FROM Product p ");
+        if (!conditions.isEmpty()) {
+            jpql.append("WHERE ").append(String.join(" AND ", conditions)).append(" ");
+        }
+        jpql.append("ORDER BY p.normalizedName, p.id");
+
+        TypedQuery<ProductSummary> query = entityManager
+                .createQuery(jpql.toString(), ProductSummary.class)
+                .setMaxResults(limit);
+        if (namePrefix != null) {
+            query.setParameter("namePrefix", namePrefix.replaceAll("[!%_]", "!$0") + "%");
+        }
+        if (afterId != null) {
+            query.setParameter("afterName", afterName);
+            query.setParameter("afterId", afterId);
+        }
+        return query.getResultList();
+    }
+}
@@ -4,27 +4,36 @@ import com.students.recipesapi.entity.Comment;
 import com.students.recipesapi.entity.Rating;
 import com.students.recipesapi.entity.Recipe;
 import com.students.recipesapi.entity.UserEntity;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.data.repository.query.Param;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 public interface RatingRepository extends JpaRepository<Rating, Long>, RatingRepositoryCustom {
-    @Transactional
-    @Query("SELECT r FROM Rating r WHERE r.recipe.id = :recipeId")
-    List<Rating> findForRecipe(Long recipeId);
+    @Query("SELECT r.id FROM Rating r WHERE r.recipe.id = :recipeId")
+    List<Long> findIdsByRecipeId(@Param("recipeId") Long recipeId, Pageable pageable);
+
+    @Modifying
+    @Query("DELETE FROM Rating r WHERE r.recipe.id = :recipeId")
+    int deleteByRecipeId(@Param("recipeId") Long recipeId);
+
+    @Modifying
+    @Query("DELETE FROM Rating r WHERE r.id IN :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
 }
 
 
 interface RatingRepositoryCustom {
     Optional<Rating> findByUserAndRecipe(UserEntity user, Recipe recipe);
 
-
-    double getAvgForRecipe(Recipe recipe);
+    Optional<Rating> findByUserIdAndRecipeId(Long userId, Long recipeId);
 }
 
 class RatingRepositoryImpl implements RatingRepositoryCustom {
@@ -32,28 +41,17 @@ class RatingRepositoryImpl implements RatingRepositoryCustom {
     EntityManager entityManager;
 
     public Optional<Rating> findByUserAndRecipe(UserEntity user, Recipe recipe) {
-        String query = "SELECT r FROM Rating r WHERE r.user.id = :userId AND r.recipe.id = :recipeId";
-        try {
-            return Optional.ofNullable(
-                    (Rating) entityManager
-                            .createQuery(query)
-                            .setParameter("userId", user.getId())
-                            .setParameter("recipeId", recipe.getId())
-                            .getSingleResult());
-        } catch (Exception e) {
-            return Optional.empty();
-        }
+        return findByUserIdAndRecipeId(user.getId(), recipe.getId());
     }
 
-    @Override
-    public double getAvgForRecipe(Recipe recipe) {
-        String query = "SELECT AVG(r.rating) FROM Rating r WHERE r.recipe.id = :recipeId";
-        Object result = entityManager
-                .createQuery(query)
-                .setParameter("recipeId", recipe.getId())
-                .getSingleResult();
-
-        if (result != null) return (double) result;
-        else return 0.0;
+    public Optional<Rating> findByUserIdAndRecipeId(Long userId, Long recipeId) {
+        String query = "SELECT r FROM Rating r WHERE r.user.id = :userId AND r.recipe.id = :recipeId";
+        return entityManager
+                .createQuery(query, Rating.class)
+                .setParameter("userId", userId)
+                .setParameter("recipeId", recipeId)
+                .getResultList()
+                .stream()
+                .findFirst();
     }
 }
\ No newline at end of file
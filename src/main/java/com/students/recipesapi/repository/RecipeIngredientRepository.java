@@ -1,31 +1,37 @@
 package com.students.recipesapi.repository;
 
-import com.students.recipesapi.entity.Rating;
-import com.students.recipesapi.entity.Recipe;
 import com.students.recipesapi.entity.RecipeIngredient;
-import com.students.recipesapi.entity.UserEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import java.util.Collection;
 import java.util.List;
-import java.util.Optional;
 
 public interface RecipeIngredientRepository extends JpaRepository<RecipeIngredient, Long>, IngredientRepositoryCustom {
+    List<RecipeIngredient> findByRecipeId(Long recipeId);
 }
 
 interface IngredientRepositoryCustom {
-//    void deleteByRecipeId(Long recipeId);
     void deleteByRecipeId(Long recipeId);
-    List<RecipeIngredient> findByRecipeId(Long recipeId);
+
+    /**
+     * Inserts new ingredients with plain persist calls. save() would merge them instead, because their key is
+     * assigned, which costs a select per row and keeps Hibernate from batching the inserts.
+     */
+    void persistAll(Collection<RecipeIngredient> ingredients);
 }
 
-//class IngredientRepositoryImpl implements IngredientRepositoryCustom {
-//    @PersistenceContext
-//    EntityManager entityManager;
-//
-//    public void deleteByRecipeId(Long recipeId) {
-//        String query = "DELETE FROM RecipeIngredient r WHERE r.recipe.id = :recipeId";
-//        entityManager.createQuery(query).executeUpdate();
-//    }
-//}
+class RecipeIngredientRepositoryImpl implements IngredientRepositoryCustom {
+    @PersistenceContext
+    EntityManager entityManager;
+
+    public void deleteByRecipeId(Long recipeId) {
+        String query = "DELETE FROM RecipeIngredient r WHERE r.id.recipeId = :recipeId";
+        entityManager.createQuery(query).setParameter("recipeId", recipeId).executeUpdate();
+    }
+
+    public void persistAll(Collection<RecipeIngredient> ingredients) {
+        ingredients.forEach(entityManager::persist);
+    }
+}
@@ -1,19 +1,194 @@
 package com.students.recipesapi.repository;
 
 import com.students.recipesapi.entity.Recipe;
-import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Query;
+import com.students.recipesapi.model.RatingAggregate;
+import com.students.recipesapi.model.RecipeSummary;
+import org.springframework.data.jpa.repository.*;
 import org.springframework.data.repository.query.Param;
 
-import java.util.Collection;
-import java.util.List;
-
-public interface RecipeRepository extends JpaRepository<Recipe, Long> {
-    @Query(value = "SELECT DISTINCT r " +
-            "FROM Recipe r, IN(r.tags) t, IN(r.author) a " +
-            "WHERE LOWER(r.title) LIKE LOWER(CONCAT('%', :query,'%')) " +
-            "OR LOWER(t) LIKE LOWER(CONCAT('%', :query, '%')) " +
-            "OR LOWER(a.firstName) LIKE LOWER(CONCAT('%', :query, '%')) " +
-            "OR LOWER(a.lastName) LIKE LOWER(CONCAT('%', :query, '%')) ")
-    List<Recipe> findAllByQuery(@Param("query") String query);
-}
\ No newline at end of file
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.PersistenceContext;
+import javax.persistence.QueryHint;
+import javax.persistence.TypedQuery;
+import java.util.*;
+
+public interface RecipeRepository extends JpaRepository<Recipe, Long>, RecipeRepositoryCustom {
+    /**
+     * Keeps DISTINCT out of the SQL, where it would have to compare LOB columns; Hibernate still removes
+     * the duplicate roots produced by fetching the ingredients collection.
+     */
+    String DISTINCT_IN_MEMORY = "hibernate.query.passDistinctThrough";
+
+    @EntityGraph(Recipe.DETAIL_GRAPH)
+    @QueryHints(@QueryHint(name = DISTINCT_IN_MEMORY, value = "false"))
+    @Query("SELECT DISTINCT r FROM Recipe r WHERE r.id = :id AND r.deleted = false")
+    Optional<Recipe> findDetailById(@Param("id") Long id);
+
+    @EntityGraph(Recipe.EDIT_GRAPH)
+    @QueryHints(@QueryHint(name = DISTINCT_IN_MEMORY, value = "false"))
+    @Query("SELECT DISTINCT r FROM Recipe r WHERE r.id = :id AND r.deleted = false")
+    Optional<Recipe> findForEditById(@Param("id") Long id);
+
+    @EntityGraph(Recipe.DETAIL_GRAPH)
+    @QueryHints(@QueryHint(name = DISTINCT_IN_MEMORY, value = "false"))
+    @Query("SELECT DISTINCT r FROM Recipe r WHERE r.id IN :ids")
+    List<Recipe> findListByIdIn(@Param("ids") Collection<Long> ids);
+
+    @EntityGraph(Recipe.DETAIL_GRAPH)
+    @QueryHints(@QueryHint(name = DISTINCT_IN_MEMORY, value = "false"))
+    @Query("SELECT DISTINCT r FROM Recipe r WHERE r.deleted = false")
+    List<Recipe> findAllForList();
+
+    @EntityGraph(Recipe.DETAIL_GRAPH)
+    @QueryHints(@QueryHint(name = DISTINCT_IN_MEMORY, value = "false"))
+    @Query("SELECT DISTINCT r FROM Recipe r WHERE r.deleted = false AND r.author.id = :userId")
+    List<Recipe> findAllForListByAuthorId(@Param("userId") Long userId);
+
+    @EntityGraph(Recipe.DETAIL_GRAPH)
+    @QueryHints(@QueryHint(name = DISTINCT_IN_MEMORY, value = "false"))
+    @Query("SELECT DISTINCT r FROM Recipe r WHERE r.deleted = false " +
+            "AND r.id IN (SELECT i.recipe.id FROM RecipeIngredient i WHERE i.product.id = :productId)")
+    List<Recipe> findAllForListByProductId(@Param("productId") Long productId);
+
+    @Query("SELECT r.imageHash FROM Recipe r WHERE r.id = :id")
+    Optional<String> findImageHashById(@Param("id") Long id);
+
+    @Query("SELECT r.id FROM Recipe r WHERE r.deleted = true")
+    List<Long> findDeletedIds();
+
+    /**
+     * Takes a write lock on the recipe row and reads its rating aggregate without loading the recipe, so that
+     * concurrent ratings of one recipe are applied one after another.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT new com.students.recipesapi.model.RatingAggregate(r.ratingSum, r.ratingCount) " +
+            "FROM Recipe r WHERE r.id = :recipeId AND r.deleted = false")
+    Optional<RatingAggregate> lockRatingAggregateById(@Param("recipeId") Long recipeId);
+
+    /**
+     * Applies a change to the rating aggregate of a recipe in place, so that the average never has to be
+     * recomputed from the rating table. The new average is derived from the pre-update column values.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Recipe r " +
+            "SET r.ratingSum = r.ratingSum + :sumDelta, " +
+            "r.ratingCount = r.ratingCount + :countDelta, " +
+            "r.rating = (r.ratingSum + :sumDelta) / (r.ratingCount + :countDelta), " +
+            "r.version = r.version + 1 " +
+            "WHERE r.id = :recipeId")
+    int adjustRating(@Param("recipeId") Long recipeId, @Param("sumDelta") double sumDelta, @Param("countDelta") long countDelta);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Recipe r SET r.commentCount = r.commentCount + :delta, r.version = r.version + 1 WHERE r.id = :recipeId")
+    int adjustCommentCount(@Param("recipeId") Long recipeId, @Param("delta") long delta);
+
+    @Query("SELECT r.commentCount FROM Recipe r WHERE r.id = :recipeId AND r.deleted = false")
+    Optional<Long> findCommentCountById(@Param("recipeId") Long recipeId);
+
+    @Query("SELECT r.version FROM Recipe r WHERE r.id = :recipeId AND r.deleted = false")
+    Optional<Long> findVersionById(@Param("recipeId") Long recipeId);
+
+    @Query("SELECT r.rating FROM Recipe r WHERE r.id = :recipeId AND r.deleted = false")
+    Optional<Double> findRatingById(@Param("recipeId") Long recipeId);
+
+    @Query("SELECT COUNT(r) > 0 FROM Recipe r WHERE r.id = :recipeId AND r.deleted = false")
+    boolean existsNotDeletedById(@Param("recipeId") Long recipeId);
+
+    /**
+     * Marks the recipe's responses as changed after a write that doesn't go through the recipe row itself.
+     * Like the other version bumps, it has to run in the caller's transaction, so the change and the new
+     * version commit together.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Recipe r SET r.version = r.version + 1 WHERE r.id = :recipeId")
+    int incrementVersion(@Param("recipeId") Long recipeId);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Recipe r SET r.version = r.version + 1 " +
+            "WHERE r.id IN (SELECT i.recipe.id FROM RecipeIngredient i WHERE i.product.id = :productId)")
+    int incrementVersionsForProduct(@Param("productId") Long productId);
+
+    /**
+     * Marks every response that shows the user as changed: their recipes, recipes with their products and
+     * recipes they commented on.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Recipe r SET r.version = r.version + 1 " +
+            "WHERE r.author.id = :userId " +
+            "OR r.id IN (SELECT i.recipe.id FROM RecipeIngredient i WHERE i.product.author.id = :userId) " +
+            "OR r.id IN (SELECT c.recipe.id FROM Comment c WHERE c.author.id = :userId)")
+    int incrementVersionsForUser(@Param("userId") Long userId);
+
+    @Query("SELECT new com.students.recipesapi.model.RecipeSummary(r.id, r.title, a.firstName, a.lastName, r.imageHash, r.rating, r.commentCount) " +
+            "FROM Recipe r LEFT JOIN r.author a " +
+            "WHERE r.id IN :ids")
+    List<RecipeSummary> findSummariesByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Returns (recipe id, tag) pairs for the given recipes.
+     */
+    @Query("SELECT r.id, t FROM Recipe r JOIN r.tags t WHERE r.id IN :ids")
+    List<Object[]> findTagsByIdIn(@Param("ids") Collection<Long> ids);
+}
+
+interface RecipeRepositoryCustom {
+    /**
+     * Returns the id, the sort value and the version of every recipe on one page, ordered by {@code sortProperty}
+     * and then by id, both in the same direction. Only these three columns are read; callers load the recipes
+     * themselves.
+     * When {@code afterId} is set the page starts right behind that recipe (keyset pagination) and
+     * {@code afterValue} has to hold its sort value, otherwise {@code offset} rows are skipped.
+     * A {@code null} id collection matches every recipe. Deleted recipes are skipped.
+     * The sort property is inlined into the query and must be trusted.
+     */
+    List<Object[]> findPageKeys(Collection<Long> ids, String sortProperty, boolean descending, Object afterValue, Long afterId, int offset, int limit);
+}
+
+class RecipeRepositoryImpl implements RecipeRepositoryCustom {
+    @PersistenceContext
+    EntityManager entityManager;
+
+    public List<Object[]> findPageKeys(Collection<Long> ids, String sortProperty, boolean descending, Object afterValue, Long afterId, int offset, int limit) {
+        if (ids != null && ids.isEmpty()) return Collections.emptyList();
+
+        List<String> conditions = new ArrayList<>();
+        conditions.add("r.deleted = false");
+        if (ids != null) {
+            conditions.add("r.id IN :ids");
+        }
+
+        String sortPath = "r." + sortProperty;
+        String comparison = descending ? "<" : ">";
+        String direction = descending ? " DESC" : " ASC";
+        boolean sortedById = sortProperty.equals("id");
+        if (afterId != null) {
+            if (sortedById) {
+                conditions.add("r.id " + comparison + " :afterId");
+            } else {
+                conditions.add("(" + sortPath + " " + comparison + " :afterValue " +
+                        "OR (" + sortPath + " = :afterValue AND r.id " + comparison + " :afterId))");
+            }
+        }
+
+        StringBuilder jpql = new StringBuilder("SELECT r.id, ").append(sortPath).append(", r.version FROM Recipe r ");
+        if (!conditions.isEmpty()) {
+            jpql.append("WHERE ").append(String.join(" AND ", conditions)).append(" ");
+        }
+        jpql.append("ORDER BY ").append(sortPath).append(direction);
+        if (!sortedById) {
+            jpql.append(", r.id").append(direction);
+        }
+
+        TypedQuery<Object[]> typedQuery = entityManager.createQuery(jpql.toString(), Object[].class);
+        if (ids != null) typedQuery.setParameter("ids", ids);
+        if (afterId != null) {
+            typedQuery.setParameter("afterId", afterId);
+            if (!sortedById) typedQuery.setParameter("afterValue", afterValue);
+        }
+        return typedQuery
+                .setFirstResult(offset)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+}
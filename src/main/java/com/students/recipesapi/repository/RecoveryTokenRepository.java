@@ -1,12 +1,35 @@
 package com.students.recipesapi.repository;
 
 import com.students.recipesapi.entity.RecoveryToken;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
-import javax.persistence.EntityManager;
-import javax.persistence.PersistenceContext;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface RecoveryTokenRepository extends JpaRepository<RecoveryToken, Long> {
     Optional<RecoveryToken> findRecoveryTokenByToken(String token);
+
+    @Query("SELECT t.id FROM RecoveryToken t WHERE t.expirationDate < :now ORDER BY t.expirationDate")
+    List<Long> findExpiredIds(@Param("now") LocalDateTime now, Pageable pageable);
+
+    /**
+     * Returns the accounts whose activation token is among the given tokens and that were never activated.
+     */
+    @Query("SELECT u.id FROM RecoveryToken t JOIN t.userEntity u " +
+            "WHERE t.id IN :ids AND u.enabled = false AND u.activationToken = t.token AND u.username <> ''")
+    List<Long> findUnactivatedUserIds(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query("DELETE FROM RecoveryToken t WHERE t.id IN :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query("DELETE FROM RecoveryToken t WHERE t.userEntity.id IN :userIds")
+    int deleteByUserIdIn(@Param("userIds") Collection<Long> userIds);
 }
\ No newline at end of file
@@ -0,0 +1,124 @@
+package com.students.recipesapi.repository;
+
+import com.students.recipesapi.entity.StoredImage;
+import com.students.recipesapi.model.ImageMetadata;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.hibernate.Session;
+import org.springframework.data.repository.query.Param;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.InputStream;
+import java.sql.Blob;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Timestamp;
+import java.util.Optional;
+
+public interface StoredImageRepository extends JpaRepository<StoredImage, String>, StoredImageRepositoryCustom {
+    @Query("SELECT new com.students.recipesapi.model.ImageMetadata(i.hash, i.contentType, i.size, i.creationDate) " +
+            "FROM Recipe r, StoredImage i " +
+            "WHERE r.id = :recipeId AND r.deleted = false AND i.hash = r.imageHash")
+    Optional<ImageMetadata> findMetadataForRecipe(@Param("recipeId") Long recipeId);
+
+    @Query("SELECT new com.students.recipesapi.model.ImageMetadata(i.hash, i.contentType, i.size, i.creationDate) " +
+            "FROM Product p, StoredImage i " +
+            "WHERE p.id = :productId AND i.hash = p.imageHash")
+    Optional<ImageMetadata> findMetadataForProduct(@Param("productId") Long productId);
+
+    @Query("SELECT i.data FROM StoredImage i WHERE i.hash = :hash")
+    Optional<Blob> findDataByHash(@Param("hash") String hash);
+}
+
+
+interface StoredImageRepositoryCustom {
+    boolean insertStreaming(ImageMetadata metadata, InputStream data);
+
+    boolean lockIfExists(String hash);
+
+    boolean deleteIfUnreferenced(String hash);
+}
+
+class StoredImageRepositoryImpl implements StoredImageRepositoryCustom {
+    @PersistenceContext
+    EntityManager entityManager;
+
+    private static final String UNIQUE_VIOLATION = "23505";
+
+    /**
+     * Inserts an image whose bytes are streamed into the LOB column by the JDBC driver, so that they never have
+     * to be held in memory. Runs on the connection of the current transaction, which it requires. Returns false
+     * when a concurrent upload of the same bytes stored the image first; the failed insert is rolled back to a
+     * savepoint, so the surrounding transaction stays usable.
+     */
+    public boolean insertStreaming(ImageMetadata metadata, InputStream data) {
+        String sql = "INSERT INTO stored_image (hash, content_type, size, creation_date, data) VALUES (?, ?, ?, ?, ?)";
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            Savepoint savepoint = connection.setSavepoint();
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setString(1, metadata.getHash());
+                statement.setString(2, metadata.getContentType());
+                statement.setLong(3, metadata.getSize());
+                statement.setTimestamp(4, Timestamp.valueOf(metadata.getCreationDate()));
+                statement.setBlob(5, data, metadata.getSize());
+                statement.executeUpdate();
+            } catch (SQLException e) {
+                if (!UNIQUE_VIOLATION.equals(e.getSQLState())) throw e;
+                connection.rollback(savepoint);
+                return false;
+            }
+            connection.releaseSavepoint(savepoint);
+            return true;
+        });
+    }
+
+    /**
+     * Locks the image until the current transaction ends, so that {@link #deleteIfUnreferenced} can't remove an
+     * image the transaction is about to reference. Returns false when the image doesn't exist, including when a
+     * concurrent delete removed it while this waited for the lock.
+     */
+    public boolean lockIfExists(String hash) {
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            // PostgreSQL lets concurrent stores of the same image share the lock; H2 has no shared row locks
+            String lock = isPostgres(connection) ? "FOR SHARE" : "FOR UPDATE";
+            return queryAny(connection, "SELECT hash FROM stored_image WHERE hash = ? " + lock, hash);
+        });
+    }
+
+    /**
+     * Deletes the image unless a recipe or product references it. On PostgreSQL the bytes live in a large object,
+     * which deleting the row doesn't remove, so it is unlinked as well. Requires a transaction; the image stays
+     * locked until it ends, so references committed meanwhile are seen.
+     */
+    public boolean deleteIfUnreferenced(String hash) {
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            if (!queryAny(connection, "SELECT hash FROM stored_image WHERE hash = ? FOR UPDATE", hash)) return false;
+            if (queryAny(connection, "SELECT 1 FROM recipe WHERE image_hash = ?", hash)) return false;
+            if (queryAny(connection, "SELECT 1 FROM product WHERE image_hash = ?", hash)) return false;
+            if (isPostgres(connection)) {
+                queryAny(connection, "SELECT lo_unlink(data) FROM stored_image WHERE hash = ? AND data IS NOT NULL", hash);
+            }
+            try (PreparedStatement statement = connection.prepareStatement("DELETE FROM stored_image WHERE hash = ?")) {
+                statement.setString(1, hash);
+                return statement.executeUpdate() > 0;
+            }
+        });
+    }
+
+    private static boolean queryAny(Connection connection, String sql, String hash) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, hash);
+            try (ResultSet result = statement.executeQuery()) {
+                return result.next();
+            }
+        }
+    }
+
+    private static boolean isPostgres(Connection connection) throws SQLException {
+        return connection.getMetaData().getDatabaseProductName().equalsIgnoreCase("PostgreSQL");
+    }
+}
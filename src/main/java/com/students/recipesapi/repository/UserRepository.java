@@ -1,17 +1,20 @@
 package com.students.recipesapi.repository;
 
-import com.students.recipesapi.entity.RecoveryToken;
 import com.students.recipesapi.entity.UserEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
-import javax.persistence.criteria.CriteriaQuery;
-import javax.persistence.criteria.Root;
-import java.util.List;
+import java.util.Collection;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<UserEntity, Long>, UserRepositoryCustom {
+    @Modifying
+    @Query("DELETE FROM UserEntity u WHERE u.id IN :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
 }
 
 interface UserRepositoryCustom {
@@ -23,24 +26,30 @@ class UserRepositoryImpl implements UserRepositoryCustom {
     @PersistenceContext
     EntityManager entityManager;
 
+    /**
+     * Finds the user through the unique normalized username, so the lookup ignores case and surrounding spaces.
+     */
     public Optional<UserEntity> findByUsername(String username) {
-        String query = "SELECT u FROM UserEntity u WHERE u.username LIKE :username";
-        try {
-            return Optional.ofNullable(
-                    (UserEntity) entityManager
-                            .createQuery(query)
-                            .setParameter("username", username)
-                            .getSingleResult());
-        } catch (Exception e) {
-            return Optional.empty();
-        }
+        String normalizedUsername = UserEntity.normalizeUsername(username);
+        if (normalizedUsername == null) return Optional.empty();
+        String query = "SELECT u FROM UserEntity u WHERE u.normalizedUsername = :username";
+        return entityManager
+                .createQuery(query, UserEntity.class)
+                .setParameter("username", normalizedUsername)
+                .getResultList()
+                .stream()
+                .findFirst();
     }
 
     public boolean existsByUsername(String username) {
-        String query = "SELECT u FROM UserEntity u WHERE u.username LIKE :username";
-        return entityManager
-                .createQuery(query)
-                .setParameter("username", username)
-                .getResultList().size() != 0;
+        String normalizedUsername = UserEntity.normalizeUsername(username);
+        if (normalizedUsername == null) return false;
+        String query = "SELECT u.id FROM UserEntity u WHERE u.normalizedUsername = :username";
+        return !entityManager
+                .createQuery(query, Long.class)
+                .setParameter("username", normalizedUsername)
+                .setMaxResults(1)
+                .getResultList()
+                .isEmpty();
     }
 }
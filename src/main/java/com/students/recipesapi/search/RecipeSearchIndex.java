@@ -0,0 +1,218 @@
+package com.students.recipesapi.search;
+
+import com.students.recipesapi.entity.Recipe;
+import com.students.recipesapi.entity.RecipeIngredient;
+import com.students.recipesapi.repository.RecipeRepository;
+import com.students.recipesapi.service.AfterCommit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory inverted index over recipe titles, tags, author names, ingredient names and descriptions.
+ * Every query term has to match a recipe, either as a whole word or as a word prefix, and results are ranked
+ * by field-weighted TF-IDF. The index is rebuilt from the database on startup and kept current by the services
+ * that change recipes, users and products, so it only sees changes made through this application instance.
+ */
+@Component
+public class RecipeSearchIndex {
+    private static final Logger log = LoggerFactory.getLogger(RecipeSearchIndex.class);
+
+    private static final float TITLE_WEIGHT = 4.0f;
+    private static final float TAG_WEIGHT = 3.0f;
+    private static final float AUTHOR_WEIGHT = 2.0f;
+    private static final float INGREDIENT_WEIGHT = 2.0f;
+    private static final float DESCRIPTION_WEIGHT = 1.0f;
+    private static final double PREFIX_MATCH_FACTOR = 0.5;
+
+    private final RecipeRepository recipeRepository;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final NavigableMap<String, Map<Long, Float>> postings = new TreeMap<>();
+    private final Map<Long, Set<String>> termsByRecipe = new HashMap<>();
+
+    public RecipeSearchIndex(RecipeRepository recipeRepository) {
+        this.recipeRepository = recipeRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        List<Recipe> recipes = recipeRepository.findAllForList();
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            termsByRecipe.clear();
+            recipes.forEach(recipe -> addDocument(recipe.getId(), weigh(recipe)));
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Indexed {} recipes in {} ms", recipes.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Reindexes the recipe once the surrounding transaction commits, so that uncommitted recipes are never ranked
+     * and a rollback leaves the index as it was. The terms are read right away, while the recipe is still managed.
+     */
+    public void index(Recipe recipe) {
+        Long recipeId = recipe.getId();
+        Map<String, Float> weights = weigh(recipe);
+        AfterCommit.run(() -> {
+            lock.writeLock().lock();
+            try {
+                removeDocument(recipeId);
+                addDocument(recipeId, weights);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * Removes the recipe once the surrounding transaction commits.
+     */
+    public void remove(Long recipeId) {
+        AfterCommit.run(() -> {
+            lock.writeLock().lock();
+            try {
+                removeDocument(recipeId);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * Reindexes the recipes of a user whose name changed or whose account was removed, so that the old name stops
+     * matching once the surrounding transaction commits. Reads the recipes in that transaction, after the change.
+     */
+    public void reindexAuthoredBy(Long userId) {
+        recipeRepository.findAllForListByAuthorId(userId).forEach(this::index);
+    }
+
+    /**
+     * Reindexes the recipes using a renamed product once the surrounding transaction commits.
+     */
+    public void reindexUsingProduct(Long productId) {
+        recipeRepository.findAllForListByProductId(productId).forEach(this::index);
+    }
+
+    public boolean isMatchAll(String query) {
+        return tokenize(query).isEmpty();
+    }
+
+    /**
+     * Returns every recipe matching all terms of the query, in {@link SearchHit#RANKING} order.
+     */
+    public List<SearchHit> search(String query) {
+        List<String> queryTerms = tokenize(query);
+        if (queryTerms.isEmpty()) return Collections.emptyList();
+
+        Map<Long, Double> scores = null;
+        lock.readLock().lock();
+        try {
+            for (String queryTerm : new LinkedHashSet<>(queryTerms)) {
+                Map<Long, Double> termScores = scoreTerm(queryTerm);
+                if (scores == null) {
+                    scores = termScores;
+                } else {
+                    scores.keySet().retainAll(termScores.keySet());
+                    for (Map.Entry<Long, Double> score : scores.entrySet()) {
+                        score.setValue(score.getValue() + termScores.get(score.getKey()));
+                    }
+                }
+                if (scores.isEmpty()) break;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<SearchHit> hits = new ArrayList<>(scores.size());
+        scores.forEach((recipeId, score) -> hits.add(new SearchHit(recipeId, score)));
+        hits.sort(SearchHit.RANKING);
+        return hits;
+    }
+
+    private Map<Long, Double> scoreTerm(String queryTerm) {
+        Map<Long, Double> termScores = new HashMap<>();
+        double documentCount = termsByRecipe.size();
+        SortedMap<String, Map<Long, Float>> matches = postings.subMap(queryTerm, queryTerm + Character.MAX_VALUE);
+        for (Map.Entry<String, Map<Long, Float>> match : matches.entrySet()) {
+            Map<Long, Float> recipeWeights = match.getValue();
+            double idf = Math.log(1.0 + documentCount / recipeWeights.size());
+            if (!match.getKey().equals(queryTerm)) idf *= PREFIX_MATCH_FACTOR;
+            for (Map.Entry<Long, Float> recipeWeight : recipeWeights.entrySet()) {
+                termScores.merge(recipeWeight.getKey(), recipeWeight.getValue() * idf, Math::max);
+            }
+        }
+        return termScores;
+    }
+
+    private static Map<String, Float> weigh(Recipe recipe) {
+        Map<String, Float> weights = new HashMap<>();
+        addField(weights, recipe.getTitle(), TITLE_WEIGHT);
+        addField(weights, recipe.getDescription(), DESCRIPTION_WEIGHT);
+        if (recipe.getTags() != null) {
+            recipe.getTags().forEach(tag -> addField(weights, tag, TAG_WEIGHT));
+        }
+        if (recipe.getAuthor() != null) {
+            addField(weights, recipe.getAuthor().getFirstName(), AUTHOR_WEIGHT);
+            addField(weights, recipe.getAuthor().getLastName(), AUTHOR_WEIGHT);
+        }
+        if (recipe.getIngredients() != null) {
+            for (RecipeIngredient ingredient : recipe.getIngredients()) {
+                if (ingredient.getProduct() != null) {
+                    addField(weights, ingredient.getProduct().getName(), INGREDIENT_WEIGHT);
+                }
+            }
+        }
+
+        return weights;
+    }
+
+    private void addDocument(Long recipeId, Map<String, Float> weights) {
+        weights.forEach((term, weight) -> postings.computeIfAbsent(term, t -> new HashMap<>()).put(recipeId, weight));
+        termsByRecipe.put(recipeId, weights.keySet());
+    }
+
+    private void removeDocument(Long recipeId) {
+        Set<String> terms = termsByRecipe.remove(recipeId);
+        if (terms == null) return;
+        for (String term : terms) {
+            Map<Long, Float> recipeWeights = postings.get(term);
+            recipeWeights.remove(recipeId);
+            if (recipeWeights.isEmpty()) postings.remove(term);
+        }
+    }
+
+    private static void addField(Map<String, Float> weights, String text, float weight) {
+        for (String term : tokenize(text)) {
+            weights.merge(term, weight, Float::sum);
+        }
+    }
+
+    /**
+     * Splits text into lower case words without diacritics, so that "Żurek" is found by "zurek".
+     */
+    static List<String> tokenize(String text) {
+        if (text == null || text.isEmpty()) return Collections.emptyList();
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .replace('ł', 'l')
+                .replace('Ł', 'L')
+                .toLowerCase(Locale.ROOT);
+        List<String> terms = new ArrayList<>();
+        for (String term : normalized.split("[^\\p{L}\\p{N}]+")) {
+            if (!term.isEmpty()) terms.add(term);
+        }
+        return terms;
+    }
+}
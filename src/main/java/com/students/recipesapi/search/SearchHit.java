@@ -0,0 +1,21 @@
+package com.students.recipesapi.search;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Comparator;
+
+@Getter
+@AllArgsConstructor
+public class SearchHit {
+    /**
+     * Ranking order of search results: best score first, newer recipes first among equal scores.
+     */
+    public static final Comparator<SearchHit> RANKING = Comparator
+            .comparingDouble(SearchHit::getScore)
+            .thenComparing(SearchHit::getRecipeId)
+            .reversed();
+
+    private final Long recipeId;
+    private final double score;
+}
@@ -1,6 +1,5 @@
 package com.students.recipesapi.security;
 
-import com.students.recipesapi.exception.InvalidJwtAuthenticationException;
 import io.jsonwebtoken.*;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
@@ -11,28 +10,42 @@ import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
 import javax.servlet.http.HttpServletRequest;
-import java.util.Base64;
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
 import java.util.List;
+import java.util.Optional;
 
 @Component
 public class JwtTokenProvider {
 //    @Value("${security.jwt.token.secret-key:secret}")
-    private String secretKey = "sikretomagnetoszapalatata";
+    private final String secretKey = "sikretomagnetoszapalatata";
 //    @Value("${security.jwt.token.expire-length:3600000}")
     private final long validityInMilliseconds = 3600000;
 
     @Qualifier("customUserDetailsService")
     private UserDetailsService userDetailsService;
 
-    public JwtTokenProvider(@Qualifier("customUserDetailsService") UserDetailsService userDetailsService) {
+    private final PrincipalCache principalCache;
+
+    private SecretKey signingKey;
+    private JwtParser parser;
+
+    public JwtTokenProvider(@Qualifier("customUserDetailsService") UserDetailsService userDetailsService, PrincipalCache principalCache) {
         this.userDetailsService = userDetailsService;
+        this.principalCache = principalCache;
     }
 
+    /**
+     * Derives the signing key and configures the parser once. The parser is only read after this point,
+     * so it is shared by all request threads.
+     */
     @PostConstruct
     protected void init() {
-        secretKey = Base64.getEncoder().encodeToString(secretKey.getBytes());
+        signingKey = new SecretKeySpec(secretKey.getBytes(StandardCharsets.UTF_8), SignatureAlgorithm.HS256.getJcaName());
+        parser = Jwts.parser().setSigningKey(signingKey);
     }
 
     public String createToken(String username, List<String> roles) {
@@ -44,21 +57,44 @@ public class JwtTokenProvider {
                 .setClaims(claims)
                 .setIssuedAt(now)
                 .setExpiration(validity)
-                .signWith(SignatureAlgorithm.HS256, secretKey)
+                .signWith(SignatureAlgorithm.HS256, signingKey)
                 .compact();
     }
 
-    public Authentication getAuthentication(String token) throws UsernameNotFoundException {
+    /**
+     * Parses the token and checks its signature and expiration in one pass. Returns empty for any invalid token.
+     */
+    public Optional<VerifiedToken> verify(String token) {
         try {
-            UserDetails userDetails = this.userDetailsService.loadUserByUsername(getUsername(token));
-            return new UsernamePasswordAuthenticationToken(userDetails, "", userDetails.getAuthorities());
-        } catch (UsernameNotFoundException e) {
-            return null;
+            Claims claims = parser.parseClaimsJws(token).getBody();
+            if (claims.getExpiration() == null || claims.getExpiration().before(new Date())) return Optional.empty();
+            return Optional.of(new VerifiedToken(claims.getSubject(), claims.getIssuedAt(), claims.getExpiration()));
+        } catch (JwtException | IllegalArgumentException e) {
+            return Optional.empty();
         }
     }
 
-    public String getUsername(String token) {
-        return Jwts.parser().setSigningKey(secretKey).parseClaimsJws(token).getBody().getSubject();
+    /**
+     * Returns the authentication for a valid token, or null when the token is invalid, expired or its user
+     * no longer exists. The token is verified once and the result is served from the principal cache afterwards.
+     */
+    public Authentication authenticate(String token) {
+        Authentication cached = principalCache.get(token);
+        if (cached != null) return cached;
+
+        Optional<VerifiedToken> verifiedToken = verify(token);
+        if (!verifiedToken.isPresent()) return null;
+        String username = verifiedToken.get().getUsername();
+
+        UserDetails userDetails;
+        try {
+            userDetails = this.userDetailsService.loadUserByUsername(username);
+        } catch (UsernameNotFoundException e) {
+            return null;
+        }
+        Authentication authentication = new UsernamePasswordAuthenticationToken(userDetails, "", userDetails.getAuthorities());
+        principalCache.put(token, username, authentication, verifiedToken.get().getExpiration().getTime());
+        return authentication;
     }
 
     public String resolveToken(HttpServletRequest req) {
@@ -68,14 +104,4 @@ public class JwtTokenProvider {
         }
         return null;
     }
-
-    public boolean validateToken(String token) throws InvalidJwtAuthenticationException {
-        try {
-            Jws<Claims> claims = Jwts.parser().setSigningKey(secretKey).parseClaimsJws(token);
-            return !claims.getBody().getExpiration().before(new Date());
-        } catch (JwtException | IllegalArgumentException e) {
-            return false;
-//            throw new InvalidJwtAuthenticationException("Expired or invalid JWT token");
-        }
-    }
-}
\ No newline at end of file
+}
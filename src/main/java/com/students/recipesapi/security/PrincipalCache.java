@@ -0,0 +1,70 @@
+package com.students.recipesapi.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the authentication built for a JWT, so that repeated requests with the same token skip both the
+ * signature check and the user lookup. Entries live until the configured TTL or the token's own expiration,
+ * whichever comes first, and the least recently used entry is dropped once the cache is full. Changes to a user
+ * have to be reported through {@link #invalidate(String)}, otherwise they only become visible after the TTL.
+ */
+@Component
+public class PrincipalCache {
+    private final long ttlInMilliseconds;
+    private final int maxSize;
+    private final Map<String, Entry> entries;
+
+    public PrincipalCache(
+            @Value("${security.principal-cache.ttl-ms:60000}") long ttlInMilliseconds,
+            @Value("${security.principal-cache.max-size:10000}") int maxSize
+    ) {
+        this.ttlInMilliseconds = ttlInMilliseconds;
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > PrincipalCache.this.maxSize;
+            }
+        };
+    }
+
+    public synchronized Authentication get(String token) {
+        Entry entry = entries.get(token);
+        if (entry == null) return null;
+        if (entry.expiresAt <= System.currentTimeMillis()) {
+            entries.remove(token);
+            return null;
+        }
+        return entry.authentication;
+    }
+
+    public synchronized void put(String token, String username, Authentication authentication, long tokenExpiresAt) {
+        if (maxSize <= 0) return;
+        long expiresAt = Math.min(tokenExpiresAt, System.currentTimeMillis() + ttlInMilliseconds);
+        entries.put(token, new Entry(username, authentication, expiresAt));
+    }
+
+    /**
+     * Drops every cached authentication of the user, so that the next request reloads it from the database.
+     */
+    public synchronized void invalidate(String username) {
+        entries.values().removeIf(entry -> entry.username.equals(username));
+    }
+
+    private static class Entry {
+        private final String username;
+        private final Authentication authentication;
+        private final long expiresAt;
+
+        private Entry(String username, Authentication authentication, long expiresAt) {
+            this.username = username;
+            this.authentication = authentication;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
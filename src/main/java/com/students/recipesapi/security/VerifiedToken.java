@@ -0,0 +1,17 @@
+package com.students.recipesapi.security;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Date;
+
+/**
+ * Claims of a JWT whose signature and expiration have already been checked by {@link JwtTokenProvider#verify}.
+ */
+@Getter
+@AllArgsConstructor
+public class VerifiedToken {
+    private final String username;
+    private final Date issuedAt;
+    private final Date expiration;
+}
@@ -6,64 +6,139 @@ import com.students.recipesapi.entity.UserEntity;
 import com.students.recipesapi.exception.InvalidInputException;
 import com.students.recipesapi.exception.NotFoundException;
 import com.students.recipesapi.model.CommentModel;
+import com.students.recipesapi.model.CommentPage;
+import com.students.recipesapi.model.RecipeCursor;
 import com.students.recipesapi.repository.CommentRepository;
+import com.students.recipesapi.repository.RecipeRepository;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
 @Service
 public class CommentService {
     private final CommentRepository commentRepository;
-    private final RecipeService recipeService;
     private final UserService userService;
+    private final RecipeRepository recipeRepository;
+    private final RecipeResponseCache responseCache;
 
-    public CommentService(CommentRepository commentRepository, RecipeService recipeService, UserService userService) {
+    @Value("${comments.page.default-size:50}")
+    private int defaultPageSize;
+
+    @Value("${comments.page.max-size:100}")
+    private int maxPageSize;
+
+    public CommentService(CommentRepository commentRepository, UserService userService, RecipeRepository recipeRepository, RecipeResponseCache responseCache) {
         this.commentRepository = commentRepository;
-        this.recipeService = recipeService;
         this.userService = userService;
+        this.recipeRepository = recipeRepository;
+        this.responseCache = responseCache;
     }
 
     public List<Comment> findForRecipe(Long recipeId) {
         return commentRepository.findForRecipe(recipeId);
     }
 
+    /**
+     * Returns one page of the recipe's comments in creation order. The cursor is the position of the last
+     * comment of the previous page.
+     */
+    public CommentPage findPageForRecipe(Long recipeId, Integer size, String cursor) {
+        int limit = size == null ? defaultPageSize : size;
+        if (limit < 1 || limit > maxPageSize) {
+            throw new InvalidInputException(String.format("Page size has to be between 1 and %d.", maxPageSize));
+        }
+
+        LocalDateTime afterCreationDate = null;
+        Long afterId = null;
+        if (cursor != null) {
+            RecipeCursor commentCursor = RecipeCursor.decode(cursor);
+            afterId = commentCursor.getId();
+            afterCreationDate = toCreationDate(commentCursor.getValue());
+        }
+
+        List<Object[]> rows = commentRepository.findPageForRecipe(recipeId, afterCreationDate, afterId, limit);
+        List<Comment> comments = new ArrayList<>(rows.size());
+        rows.forEach(row -> comments.add((Comment) row[0]));
+        String nextCursor = null;
+        if (comments.size() == limit) {
+            Comment last = comments.get(limit - 1);
+            nextCursor = new RecipeCursor(last.getId(), last.getCreationDate().toString()).encode();
+        }
+        Long recipeVersion = rows.isEmpty()
+                ? findRecipeVersion(recipeId).orElse(null)
+                : (Long) rows.get(0)[1];
+        return new CommentPage(comments, nextCursor, recipeVersion);
+    }
+
+    /**
+     * Returns the version of the recipe, which changes with any of its comments.
+     */
+    public Optional<Long> findRecipeVersion(Long recipeId) {
+        return recipeRepository.findVersionById(recipeId);
+    }
+
+    public long countForRecipe(Long recipeId) {
+        return recipeRepository
+                .findCommentCountById(recipeId)
+                .orElseThrow(() -> new NotFoundException(String.format("Recipe with id %d not found.", recipeId)));
+    }
+
     public Comment findById(Long commentId) {
         return commentRepository
                 .findById(commentId)
                 .orElseThrow(() -> new NotFoundException(String.format("Comment with id %d not found.", commentId)));
     }
 
+    @Transactional
     public Comment create(String username, CommentModel commentModel) {
         validateCommentForCreate(commentModel);
-        Recipe recipe = recipeService.findById(commentModel.recipeId);
+        if (!recipeRepository.existsNotDeletedById(commentModel.recipeId)) {
+            throw new NotFoundException(String.format("Recipe with id %d not found.", commentModel.recipeId));
+        }
+        // The comment only needs the recipe's id, so the recipe and its associations are not loaded
+        Recipe recipe = recipeRepository.getOne(commentModel.recipeId);
         UserEntity author = userService.findByUsername(username);
 
         Comment comment = new Comment();
         comment.setAuthor(author);
         comment.setContent(commentModel.getContent());
         comment.setRecipe(recipe);
-        comment.setCreationDate(LocalDateTime.now(ZoneId.of("Europe/Warsaw")).toString());
+        comment.setCreationDate(LocalDateTime.now(ZoneId.of("Europe/Warsaw")));
 
-        return commentRepository.save(comment);
+        comment = commentRepository.save(comment);
+        recipeRepository.adjustCommentCount(recipe.getId(), 1);
+        responseCache.invalidateAfterCommit(recipe.getId());
+        return comment;
     }
 
+    @Transactional
     public Comment update(String username, CommentModel commentModel) {
         validateCommentForUpdate(commentModel);
         Comment comment = findById(commentModel.commentId);
         validateAuthority(username, comment);
 
         comment.setContent(commentModel.getContent());
-        comment.setModificationDate(LocalDateTime.now(ZoneId.of("Europe/Warsaw")).toString());
+        comment.setModificationDate(LocalDateTime.now(ZoneId.of("Europe/Warsaw")));
 
-        return commentRepository.save(comment);
+        comment = commentRepository.save(comment);
+        recipeRepository.incrementVersion(comment.getRecipe().getId());
+        return comment;
     }
 
+    @Transactional
     public void delete(String username, Long commentId) {
         Comment comment = findById(commentId);
         validateAuthority(username, comment);
         commentRepository.delete(comment);
+        recipeRepository.adjustCommentCount(comment.getRecipe().getId(), -1);
+        responseCache.invalidateAfterCommit(comment.getRecipe().getId());
     }
 
     private void validateCommentForCreate(CommentModel commentModel) {
@@ -84,6 +159,14 @@ public class CommentService {
         }
     }
 
+    private LocalDateTime toCreationDate(String value) {
+        try {
+            return LocalDateTime.parse(value);
+        } catch (NullPointerException | DateTimeParseException e) {
+            throw new InvalidInputException("Invalid page cursor.");
+        }
+    }
+
     private void validateAuthority(String authorUsername, Comment comment) {
         if (!authorUsername.equals(comment.getAuthor().getUsername())) {
             throw new InvalidInputException("Tried to act on a recipe the user has was not authorized to.");
@@ -0,0 +1,293 @@
+package com.students.recipesapi.service;
+
+import com.students.recipesapi.entity.OutboxEmail;
+import com.students.recipesapi.repository.OutboxEmailRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import javax.mail.*;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import java.io.UnsupportedEncodingException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Outbound e-mail through a persistent outbox. {@link #enqueue} only stores the message, so request threads
+ * never wait for SMTP. A scheduled poll claims due messages in batches and hands them to a bounded worker pool;
+ * each worker sends its whole batch over one SMTP connection. Failed messages are retried with exponential
+ * backoff until {@code mail.outbox.max-attempts} is reached.
+ *
+ * The SMTP server is configurable, so a local stand-in can be used with
+ * {@code mail.smtp.host=localhost mail.smtp.auth=false mail.smtp.starttls=false}.
+ */
+@Service
+public class EmailService {
+    private static final Logger log = LoggerFactory.getLogger(EmailService.class);
+
+    private final OutboxEmailRepository outboxRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final String host;
+    private final Session session;
+    private final ThreadPoolExecutor executor;
+
+    @Value("${SUPPORT_EMAIL:DefaultEmail}")
+    private String supportEmail;
+
+    @Value("${SUPPORT_EMAIL_PASSWORD:DefaultPassword}")
+    private String supportEmailPassword;
+
+    @Value("${mail.smtp.port:587}")
+    private int port;
+
+    @Value("${mail.smtp.auth:true}")
+    private boolean authenticate;
+
+    @Value("${mail.outbox.batch-size:20}")
+    private int batchSize;
+
+    @Value("${mail.outbox.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${mail.outbox.initial-backoff-seconds:30}")
+    private long initialBackoffSeconds;
+
+    @Value("${mail.outbox.max-backoff-seconds:3600}")
+    private long maxBackoffSeconds;
+
+    /**
+     * How long a claimed message is hidden from other polls. Messages of a worker that died are retried after it.
+     */
+    @Value("${mail.outbox.claim-seconds:300}")
+    private long claimSeconds;
+
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong retriedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    public EmailService(
+            OutboxEmailRepository outboxRepository,
+            TransactionTemplate transactionTemplate,
+            @Value("${mail.smtp.host:smtp.sendgrid.net}") String host,
+            @Value("${mail.smtp.starttls:true}") boolean startTls,
+            @Value("${mail.smtp.timeout-ms:10000}") int timeout,
+            @Value("${mail.outbox.threads:2}") int threads
+    ) {
+        this.outboxRepository = outboxRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.host = host;
+
+        Properties props = new Properties();
+        props.put("mail.smtp.starttls.enable", String.valueOf(startTls));
+        props.put("mail.smtp.ssl.trust", host);
+        props.put("mail.smtp.connectiontimeout", String.valueOf(timeout));
+        props.put("mail.smtp.timeout", String.valueOf(timeout));
+        props.put("mail.smtp.writetimeout", String.valueOf(timeout));
+        this.session = Session.getInstance(props);
+
+        this.executor = new ThreadPoolExecutor(
+                threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(threads),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "email-outbox");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public void enqueue(String toEmail, String subject, String body) {
+        outboxRepository.save(new OutboxEmail(toEmail, subject, body, now()));
+    }
+
+    /**
+     * Claims due messages and submits one batch per free worker. Messages that don't fit stay due for the next poll,
+     * and a batch the pool turns down is released again right away.
+     */
+    @Scheduled(fixedDelayString = "${mail.outbox.poll-interval-ms:2000}")
+    public void dispatchPending() {
+        while (executor.getQueue().remainingCapacity() > 0) {
+            List<OutboxEmail> batch = claimBatch();
+            if (batch.isEmpty()) return;
+            try {
+                executor.execute(() -> sendBatch(batch));
+            } catch (RejectedExecutionException e) {
+                release(batch);
+                return;
+            }
+            if (batch.size() < batchSize) return;
+        }
+    }
+
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    public long getRetriedCount() {
+        return retriedCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    public long getPendingCount() {
+        return outboxRepository.countByStatus(OutboxEmail.Status.PENDING);
+    }
+
+    /**
+     * Reads due messages and claims each with a conditional update, so that a message read by two polls at once,
+     * on this or another instance, is claimed and sent by only one of them.
+     */
+    private List<OutboxEmail> claimBatch() {
+        List<OutboxEmail> batch = transactionTemplate.execute(status -> {
+            LocalDateTime now = now();
+            LocalDateTime claimedUntil = now.plusSeconds(claimSeconds);
+            List<OutboxEmail> claimed = new ArrayList<>();
+            for (OutboxEmail email : outboxRepository.findDue(OutboxEmail.Status.PENDING, now, PageRequest.of(0, batchSize))) {
+                if (outboxRepository.claim(email.getId(), OutboxEmail.Status.PENDING, email.getNextAttemptAt(), claimedUntil) == 1) {
+                    claimed.add(email);
+                }
+            }
+            return claimed;
+        });
+        return batch == null ? Collections.emptyList() : batch;
+    }
+
+    private void release(List<OutboxEmail> batch) {
+        List<Long> ids = new ArrayList<>();
+        batch.forEach(email -> ids.add(email.getId()));
+        try {
+            transactionTemplate.executeWithoutResult(status -> outboxRepository.release(ids, OutboxEmail.Status.PENDING, now()));
+        } catch (RuntimeException e) {
+            log.warn("Failed to release {} e-mails, they will be sent after their claim expires", ids.size(), e);
+        }
+    }
+
+    void sendBatch(List<OutboxEmail> batch) {
+        long start = System.currentTimeMillis();
+        Map<Long, String> errors = new HashMap<>();
+        try {
+            Transport transport = openTransport();
+            try {
+                for (OutboxEmail email : batch) {
+                    try {
+                        MimeMessage message = buildMessage(email);
+                        transport.sendMessage(message, message.getAllRecipients());
+                    } catch (MessagingException | RuntimeException e) {
+                        errors.put(email.getId(), e.toString());
+                    }
+                }
+            } finally {
+                closeQuietly(transport);
+            }
+        } catch (MessagingException e) {
+            batch.forEach(email -> errors.putIfAbsent(email.getId(), e.toString()));
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> recordResults(batch, errors));
+        } catch (RuntimeException e) {
+            log.warn("Failed to record the results of {} e-mails, they will be sent again", batch.size(), e);
+            return;
+        }
+        log.info("Sent {} of {} e-mails in {} ms ({} sent, {} retried, {} failed since startup)",
+                batch.size() - errors.size(), batch.size(), System.currentTimeMillis() - start,
+                sentCount.get(), retriedCount.get(), failedCount.get());
+    }
+
+    private void recordResults(List<OutboxEmail> batch, Map<Long, String> errors) {
+        LocalDateTime now = now();
+        List<Long> ids = new ArrayList<>();
+        batch.forEach(email -> ids.add(email.getId()));
+        for (OutboxEmail email : outboxRepository.findAllById(ids)) {
+            email.setAttempts(email.getAttempts() + 1);
+            String error = errors.get(email.getId());
+            if (error == null) {
+                email.setStatus(OutboxEmail.Status.SENT);
+                email.setSentAt(now);
+                email.setLastError(null);
+                sentCount.incrementAndGet();
+            } else if (email.getAttempts() >= maxAttempts) {
+                email.setStatus(OutboxEmail.Status.FAILED);
+                email.setLastError(truncate(error));
+                failedCount.incrementAndGet();
+                log.warn("Giving up on e-mail {} to {} after {} attempts: {}", email.getId(), email.getRecipient(), email.getAttempts(), error);
+            } else {
+                email.setNextAttemptAt(now.plus(backoff(email.getAttempts())));
+                email.setLastError(truncate(error));
+                retriedCount.incrementAndGet();
+            }
+        }
+    }
+
+    private Duration backoff(int attempts) {
+        long seconds = initialBackoffSeconds << Math.min(attempts - 1, 20);
+        return Duration.ofSeconds(Math.min(seconds, maxBackoffSeconds));
+    }
+
+    public Transport openTransport() throws MessagingException {
+        Transport transport = session.getTransport("smtp");
+        if (authenticate) {
+            transport.connect(host, port, supportEmail, supportEmailPassword);
+        } else {
+            transport.connect(host, port, null, null);
+        }
+        return transport;
+    }
+
+    private static void closeQuietly(Transport transport) {
+        try {
+            transport.close();
+        } catch (MessagingException e) {
+            log.debug("Failed to close the SMTP connection", e);
+        }
+    }
+
+    private MimeMessage buildMessage(OutboxEmail email) throws MessagingException {
+        MimeMessage message = new MimeMessage(session);
+
+        message.addHeader("Content-type", "text/HTML; charset=UTF-8");
+        message.addHeader("format", "flowed");
+        message.addHeader("Content-Transfer-Encoding", "8bit");
+
+        try {
+            message.setFrom(new InternetAddress("jedzonko.pl.uz@gmail.com", "Jedzonko.pl"));
+        } catch (UnsupportedEncodingException e) {
+            throw new MessagingException("Invalid sender address.", e);
+        }
+        message.setReplyTo(InternetAddress.parse("jedzonko.pl.uz@gmail.com", false));
+        message.setSentDate(new Date());
+        message.setSubject(email.getSubject(), "UTF-8");
+        message.setText(email.getBody(), "UTF-8");
+
+        message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(email.getRecipient(), false));
+        return message;
+    }
+
+    private static String truncate(String error) {
+        if (error == null) return "Unknown error";
+        return error.length() > 1000 ? error.substring(0, 1000) : error;
+    }
+
+    private static LocalDateTime now() {
+        return LocalDateTime.now(ZoneId.of("Europe/Warsaw"));
+    }
+}
@@ -0,0 +1,89 @@
+package com.students.recipesapi.service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * An in-memory cache of values loaded from the database that drops the least recently used values once their
+ * total weight exceeds {@code maxWeight}. Every invalidation starts a new generation, and a value loaded before
+ * the latest invalidation is not cached, so a slow reader can't put back the state an invalidation replaced.
+ * Callers read {@link #generation()} before loading and pass it to {@link #put}.
+ */
+public class GenerationalLruCache<K, V> {
+    private final long maxWeight;
+    private final ToLongFunction<V> weigher;
+    private final BiConsumer<K, V> evictionListener;
+    private final Map<K, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+    private long generation;
+
+    /**
+     * @param evictionListener called for values dropped to make room, while the cache is locked
+     */
+    public GenerationalLruCache(long maxWeight, ToLongFunction<V> weigher, BiConsumer<K, V> evictionListener) {
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        this.evictionListener = evictionListener;
+    }
+
+    public GenerationalLruCache(long maxWeight, ToLongFunction<V> weigher) {
+        this(maxWeight, weigher, (key, value) -> {
+        });
+    }
+
+    public synchronized V get(K key) {
+        return entries.get(key);
+    }
+
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Caches a value unless something was invalidated since {@code loadedAtGeneration} or the value alone
+     * outweighs the cache, then drops the least recently used values until the cache fits again.
+     *
+     * @return whether the value was cached
+     */
+    public synchronized boolean put(K key, V value, long loadedAtGeneration) {
+        long valueWeight = weigher.applyAsLong(value);
+        if (loadedAtGeneration != generation || valueWeight > maxWeight) return false;
+        V previous = entries.put(key, value);
+        if (previous != null) weight -= weigher.applyAsLong(previous);
+        weight += valueWeight;
+
+        Iterator<Map.Entry<K, V>> eldest = entries.entrySet().iterator();
+        while (weight > maxWeight) {
+            Map.Entry<K, V> evicted = eldest.next();
+            eldest.remove();
+            weight -= weigher.applyAsLong(evicted.getValue());
+            evictionListener.accept(evicted.getKey(), evicted.getValue());
+        }
+        return true;
+    }
+
+    /**
+     * Drops a value and starts a new generation.
+     *
+     * @return the dropped value, or null when it wasn't cached
+     */
+    public synchronized V invalidate(K key) {
+        generation++;
+        V removed = entries.remove(key);
+        if (removed != null) weight -= weigher.applyAsLong(removed);
+        return removed;
+    }
+
+    public synchronized void invalidateAll() {
+        generation++;
+        entries.clear();
+        weight = 0;
+    }
+
+    public synchronized long weight() {
+        return weight;
+    }
+}
@@ -0,0 +1,246 @@
+package com.students.recipesapi.service;
+
+import com.students.recipesapi.entity.StoredImage;
+import com.students.recipesapi.exception.Base64DecodingException;
+import com.students.recipesapi.exception.ImageTooLargeException;
+import com.students.recipesapi.exception.InvalidInputException;
+import com.students.recipesapi.exception.NotFoundException;
+import com.students.recipesapi.model.ImageMetadata;
+import com.students.recipesapi.model.ImageUpload;
+import com.students.recipesapi.repository.StoredImageRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StreamUtils;
+
+import javax.annotation.PreDestroy;
+import java.io.*;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Blob;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Base64;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Service
+public class ImageService {
+    private static final Logger log = LoggerFactory.getLogger(ImageService.class);
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+
+    private final StoredImageRepository imageRepository;
+    private final ThumbnailService thumbnailService;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService cleanupExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "image-cleanup");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${images.upload.max-size:10485760}")
+    private long maxImageSize;
+
+    public ImageService(StoredImageRepository imageRepository, ThumbnailService thumbnailService, TransactionTemplate transactionTemplate) {
+        this.imageRepository = imageRepository;
+        this.thumbnailService = thumbnailService;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        cleanupExecutor.shutdownNow();
+    }
+
+    public StoredImage findByHash(String hash) {
+        return imageRepository
+                .findById(hash)
+                .orElseThrow(() -> new NotFoundException(String.format("Image %s not found.", hash)));
+    }
+
+    /**
+     * Copies the stored bytes of an image to {@code out}, streaming them from the database instead of loading
+     * them into memory first.
+     */
+    @Transactional(readOnly = true)
+    public void copyData(String hash, OutputStream out) throws IOException {
+        Blob data = imageRepository
+                .findDataByHash(hash)
+                .orElseThrow(() -> new NotFoundException(String.format("Image %s not found.", hash)));
+        try (InputStream in = data.getBinaryStream()) {
+            StreamUtils.copy(in, out);
+        } catch (SQLException e) {
+            throw new IOException("Failed to read image " + hash, e);
+        }
+    }
+
+    public ImageMetadata findMetadataForRecipe(Long recipeId) {
+        return imageRepository
+                .findMetadataForRecipe(recipeId)
+                .orElseThrow(() -> new NotFoundException(String.format("Image for recipe with id %d not found.", recipeId)));
+    }
+
+    public ImageMetadata findMetadataForProduct(Long productId) {
+        return imageRepository
+                .findMetadataForProduct(productId)
+                .orElseThrow(() -> new NotFoundException(String.format("Image for product with id %d not found.", productId)));
+    }
+
+    @Transactional
+    public String storeBase64(String imageInBase64) {
+        if (imageInBase64.length() / 4 * 3 > maxImageSize + 2) throw tooLarge();
+        byte[] data;
+        try {
+            data = Base64.getDecoder().decode(imageInBase64);
+        } catch (Exception e) {
+            throw new Base64DecodingException("Failed to decode Base64 string.");
+        }
+        if (data.length > maxImageSize) throw tooLarge();
+        return store(data);
+    }
+
+    /**
+     * Stores an uploaded image without holding it in memory: the upload is decoded and hashed chunk by chunk
+     * into a temporary file, which is then streamed into the database. Uploads larger than
+     * {@code images.upload.max-size} bytes after decoding are rejected as soon as they cross the limit.
+     */
+    @Transactional
+    public String store(ImageUpload upload) {
+        InputStream data = upload.isBase64Encoded() ? Base64.getMimeDecoder().wrap(upload.getData()) : upload.getData();
+        Path file = null;
+        try {
+            file = Files.createTempFile("image-upload", ".tmp");
+            MessageDigest digest = sha256();
+            long size = 0;
+            try (OutputStream out = Files.newOutputStream(file)) {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = data.read(buffer)) != -1) {
+                    size += read;
+                    if (size > maxImageSize) throw tooLarge();
+                    digest.update(buffer, 0, read);
+                    out.write(buffer, 0, read);
+                }
+            }
+
+            if (size == 0) throw new InvalidInputException("The uploaded image is empty.");
+
+            String hash = toHex(digest.digest());
+            // Skips storing known bytes again; a concurrent upload that gets past this check is caught by insertStreaming
+            if (!imageRepository.lockIfExists(hash)) {
+                String contentType;
+                try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+                    contentType = guessContentType(in);
+                }
+                ImageMetadata metadata = new ImageMetadata(hash, contentType, size, LocalDateTime.now(ZoneId.of("Europe/Warsaw")));
+                boolean inserted;
+                try (InputStream in = Files.newInputStream(file)) {
+                    inserted = imageRepository.insertStreaming(metadata, in);
+                }
+                if (inserted) thumbnailService.requestVariants(hash);
+            }
+            return hash;
+        } catch (IOException e) {
+            if (upload.isBase64Encoded()) throw new Base64DecodingException("Failed to decode Base64 stream.");
+            throw new InvalidInputException("Failed to read the uploaded image.");
+        } finally {
+            deleteQuietly(file);
+        }
+    }
+
+    /**
+     * Stores the image unless identical bytes are already present and returns its content hash. Concurrent
+     * stores of the same bytes both succeed with one row. Downscaled variants of a newly stored image are
+     * generated in the background. A known image stays locked until the transaction ends, so that a concurrent
+     * {@link #releaseAfterCommit} can't delete it before the caller references it.
+     */
+    @Transactional
+    public String store(byte[] data) {
+        String hash = hash(data);
+        if (!imageRepository.lockIfExists(hash)) {
+            ImageMetadata metadata = new ImageMetadata(hash, guessContentType(data), (long) data.length, LocalDateTime.now(ZoneId.of("Europe/Warsaw")));
+            if (imageRepository.insertStreaming(metadata, new ByteArrayInputStream(data))) {
+                thumbnailService.requestVariants(hash);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Deletes an image a recipe or product stopped showing, together with its cached variants, once the
+     * surrounding transaction commits. Images that something else still shows are kept. Runs in the background,
+     * one image at a time.
+     */
+    public void releaseAfterCommit(String hash) {
+        if (hash == null) return;
+        AfterCommit.run(() -> cleanupExecutor.execute(() -> deleteIfUnreferenced(hash)));
+    }
+
+    void deleteIfUnreferenced(String hash) {
+        try {
+            Boolean deleted = transactionTemplate.execute(status -> imageRepository.deleteIfUnreferenced(hash));
+            if (Boolean.TRUE.equals(deleted)) thumbnailService.deleteVariants(hash);
+        } catch (RuntimeException e) {
+            log.warn("Failed to delete the released image {}", hash, e);
+        }
+    }
+
+    /**
+     * Returns the content hash images are stored under.
+     */
+    public static String hash(byte[] data) {
+        return toHex(sha256().digest(data));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+
+    private static String toHex(byte[] digest) {
+        StringBuilder hash = new StringBuilder();
+        for (byte b : digest) {
+            hash.append(String.format("%02x", b));
+        }
+        return hash.toString();
+    }
+
+    public static String guessContentType(byte[] data) {
+        return guessContentType(new ByteArrayInputStream(data));
+    }
+
+    /**
+     * Guesses from the first bytes of a stream that supports mark and reset.
+     */
+    private static String guessContentType(InputStream data) {
+        try {
+            String contentType = URLConnection.guessContentTypeFromStream(data);
+            return contentType != null ? contentType : DEFAULT_CONTENT_TYPE;
+        } catch (IOException e) {
+            return DEFAULT_CONTENT_TYPE;
+        }
+    }
+
+    private ImageTooLargeException tooLarge() {
+        return new ImageTooLargeException(String.format("Images can't be larger than %d bytes.", maxImageSize));
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) return;
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.debug("Failed to delete the temporary upload {}", file, e);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.students.recipesapi.service;
+
+import com.students.recipesapi.model.ProductModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps the response models of recently read products, together with a barcode index over them, so that product
+ * and scanner lookups are served from memory once warm. At most {@code products.cache.max-size} products are kept.
+ * ProductService invalidates the products it writes.
+ */
+@Component
+public class ProductCache {
+    private final GenerationalLruCache<Long, ProductModel> productsById;
+    private final Map<String, Long> idsByBarcode = new HashMap<>();
+
+    public ProductCache(@Value("${products.cache.max-size:10000}") int maxSize) {
+        this.productsById = new GenerationalLruCache<>(maxSize, product -> 1, (id, product) -> removeBarcode(product));
+    }
+
+    public synchronized ProductModel get(Long id) {
+        return productsById.get(id);
+    }
+
+    public synchronized ProductModel getByBarcode(String barcode) {
+        Long id = idsByBarcode.get(barcode);
+        return id == null ? null : productsById.get(id);
+    }
+
+    /**
+     * Returns the value to pass to {@link #put} for a product about to be loaded from the database.
+     */
+    public synchronized long generation() {
+        return productsById.generation();
+    }
+
+    public synchronized void put(ProductModel product, long loadedAtGeneration) {
+        productsById.put(product.getId(), product, loadedAtGeneration);
+    }
+
+    /**
+     * Caches the product a barcode lookup resolved to and indexes it under that barcode. Only barcode lookups
+     * populate the index, since a product loaded by id need not be the one its barcode resolves to.
+     */
+    public synchronized void putForBarcode(ProductModel product, long loadedAtGeneration) {
+        if (productsById.put(product.getId(), product, loadedAtGeneration)) {
+            idsByBarcode.put(product.getBarcode(), product.getId());
+        }
+    }
+
+    /**
+     * Drops the product and the barcode it was written with, which may now resolve to a different product.
+     */
+    public synchronized void invalidate(Long id, String barcode) {
+        ProductModel product = productsById.invalidate(id);
+        if (product != null) removeBarcode(product);
+        if (barcode != null) idsByBarcode.remove(barcode);
+    }
+
+    private void removeBarcode(ProductModel product) {
+        if (product.getBarcode() != null) idsByBarcode.remove(product.getBarcode(), product.getId());
+    }
+}
@@ -4,27 +4,74 @@ import com.students.recipesapi.entity.Product;
 import com.students.recipesapi.entity.UserEntity;
 import com.students.recipesapi.exception.InvalidInputException;
 import com.students.recipesapi.exception.NotFoundException;
+import com.students.recipesapi.model.ImageUpload;
 import com.students.recipesapi.model.ProductModel;
+import com.students.recipesapi.model.ProductPage;
+import com.students.recipesapi.model.ProductSummary;
+import com.students.recipesapi.model.RecipeCursor;
 import com.students.recipesapi.repository.ProductRepository;
+import com.students.recipesapi.repository.RecipeRepository;
 import com.students.recipesapi.repository.UserRepository;
+import com.students.recipesapi.search.RecipeSearchIndex;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 
 @Service
 public class ProductService {
     private final UserRepository userRepository;
     private final ProductRepository productRepository;
+    private final ImageService imageService;
+    private final ProductCache productCache;
+    private final RecipeRepository recipeRepository;
+    private final RecipeResponseCache responseCache;
+    private final RecipeSearchIndex searchIndex;
 
-    public ProductService(UserRepository userRepository, ProductRepository productRepository) {
+    @Value("${products.page.default-size:50}")
+    private int defaultPageSize;
+
+    @Value("${products.page.max-size:200}")
+    private int maxPageSize;
+
+    public ProductService(UserRepository userRepository, ProductRepository productRepository, ImageService imageService, ProductCache productCache, RecipeRepository recipeRepository, RecipeResponseCache responseCache, RecipeSearchIndex searchIndex) {
         this.userRepository = userRepository;
         this.productRepository = productRepository;
+        this.imageService = imageService;
+        this.productCache = productCache;
+        this.recipeRepository = recipeRepository;
+        this.responseCache = responseCache;
+        this.searchIndex = searchIndex;
     }
 
-    @Transactional
-    public List<Product> findAll() {
-        return productRepository.findAll();
+    /**
+     * Returns one page of products ordered by name, optionally only those whose name starts with the given
+     * prefix, ignoring case. The cursor is the position of the last product of the previous page.
+     */
+    public ProductPage findPage(String namePrefix, Integer size, String cursor) {
+        int limit = size == null ? defaultPageSize : size;
+        if (limit < 1 || limit > maxPageSize) {
+            throw new InvalidInputException(String.format("Page size has to be between 1 and %d.", maxPageSize));
+        }
+
+        String normalizedPrefix = namePrefix == null || namePrefix.trim().isEmpty() ? null : Product.normalizeName(namePrefix);
+        String afterName = null;
+        Long afterId = null;
+        if (cursor != null) {
+            RecipeCursor productCursor = RecipeCursor.decode(cursor);
+            afterId = productCursor.getId();
+            afterName = productCursor.getValue() == null ? "" : productCursor.getValue();
+        }
+
+        List<ProductSummary> products = productRepository.findPage(normalizedPrefix, afterName, afterId, limit);
+        String nextCursor = null;
+        if (products.size() == limit) {
+            ProductSummary last = products.get(limit - 1);
+            nextCursor = new RecipeCursor(last.getId(), Product.normalizeName(last.getName())).encode();
+        }
+        return new ProductPage(products, nextCursor);
     }
 
     @Transactional
@@ -34,6 +81,39 @@ public class ProductService {
                 .orElseThrow(() -> new NotFoundException(String.format("Product with id %d not found.", id)));
     }
 
+    public ProductModel findModelById(Long id) {
+        ProductModel cached = productCache.get(id);
+        if (cached != null) return cached;
+
+        long generation = productCache.generation();
+        ProductModel productModel = new ProductModel(findById(id));
+        productCache.put(productModel, generation);
+        return productModel;
+    }
+
+    /**
+     * Returns the product with the given barcode. Barcodes aren't unique, so the oldest such product wins.
+     */
+    public ProductModel findModelByBarcode(String barcode) {
+        ProductModel cached = productCache.getByBarcode(barcode);
+        if (cached != null) return cached;
+
+        long generation = productCache.generation();
+        ProductModel productModel = productRepository
+                .findFirstByBarcodeOrderByIdAsc(barcode)
+                .map(ProductModel::new)
+                .orElseThrow(() -> new NotFoundException(String.format("Product with barcode \"%s\" not found.", barcode)));
+        productCache.putForBarcode(productModel, generation);
+        return productModel;
+    }
+
+    /**
+     * Returns the products with the given ids that exist, loaded with a single query.
+     */
+    public List<Product> findAllById(Collection<Long> ids) {
+        return productRepository.findAllWithAuthorByIdIn(ids);
+    }
+
     public Product create(String username, ProductModel productModel) {
         UserEntity userEntity = userRepository
                 .findByUsername(username)
@@ -42,12 +122,15 @@ public class ProductService {
         Product product = new Product();
         product.setName(productModel.getName());
         product.setBarcode(productModel.getBarcode());
-        product.setImage(productModel.getImage());
+        if (productModel.getImage() != null) product.setImageHash(imageService.storeBase64(productModel.getImage()));
         product.setAuthor(userEntity);
 
-        return productRepository.save(product);
+        product = productRepository.save(product);
+        productCache.invalidate(product.getId(), product.getBarcode());
+        return product;
     }
 
+    @Transactional
     public Product update(String username, ProductModel productModel) {
         if (!userRepository.existsByUsername(username)) {
             throw new NotFoundException(String.format("User with username \"%s\" not found.", username));
@@ -63,11 +146,35 @@ public class ProductService {
 
         if (productModel.getName() != null) originalProduct.setName(productModel.getName());
         if (productModel.getBarcode() != null) originalProduct.setBarcode(productModel.getBarcode());
-        if (productModel.getImage() != null) originalProduct.setImage(productModel.getImage());
+        if (productModel.getImage() != null) replaceImage(originalProduct, imageService.storeBase64(productModel.getImage()));
+
+        Product product = productRepository.save(originalProduct);
+        invalidateAfterCommit(product.getId(), product.getBarcode());
+        recipeRepository.incrementVersionsForProduct(product.getId());
+        responseCache.invalidateAllAfterCommit();
+        if (productModel.getName() != null) searchIndex.reindexUsingProduct(product.getId());
+        return product;
+    }
+
+    @Transactional
+    public Product updateImage(String username, Long productId, ImageUpload image) {
+        Product originalProduct = productRepository
+                .findById(productId)
+                .orElseThrow(() -> new NotFoundException(String.format("Product with id %d not found", productId)));
 
-        return productRepository.save(originalProduct);
+        if (!username.equals(originalProduct.getAuthor().getUsername())) {
+            throw new InvalidInputException("Tried to update a product user is not allowed to.");
+        }
+
+        replaceImage(originalProduct, imageService.store(image));
+        Product product = productRepository.save(originalProduct);
+        invalidateAfterCommit(product.getId(), product.getBarcode());
+        recipeRepository.incrementVersionsForProduct(product.getId());
+        responseCache.invalidateAllAfterCommit();
+        return product;
     }
 
+    @Transactional
     public void delete(String username, Long productId) {
         if (!userRepository.existsByUsername(username)) {
             throw new NotFoundException(String.format("User with username \"%s\" not found.", username));
@@ -82,5 +189,20 @@ public class ProductService {
         }
 
         productRepository.delete(originalProduct);
+        invalidateAfterCommit(originalProduct.getId(), originalProduct.getBarcode());
+        imageService.releaseAfterCommit(originalProduct.getImageHash());
+    }
+
+    private void replaceImage(Product product, String imageHash) {
+        if (!imageHash.equals(product.getImageHash())) imageService.releaseAfterCommit(product.getImageHash());
+        product.setImageHash(imageHash);
+    }
+
+    /**
+     * Drops the product from the cache once the write commits; dropping it earlier would let a concurrent read
+     * cache the old state again.
+     */
+    private void invalidateAfterCommit(Long productId, String barcode) {
+        AfterCommit.run(() -> productCache.invalidate(productId, barcode));
     }
 }
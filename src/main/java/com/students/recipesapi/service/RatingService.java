@@ -7,9 +7,12 @@ import com.students.recipesapi.entity.UserEntity;
 import com.students.recipesapi.exception.InvalidInputException;
 import com.students.recipesapi.exception.NotFoundException;
 import com.students.recipesapi.model.CommentModel;
+import com.students.recipesapi.model.RatingAggregate;
 import com.students.recipesapi.model.RatingModel;
 import com.students.recipesapi.repository.RatingRepository;
+import com.students.recipesapi.repository.RecipeRepository;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.time.ZoneId;
@@ -19,18 +22,24 @@ import java.util.Optional;
 @Service
 public class RatingService {
     private final RatingRepository ratingRepository;
+    private final RecipeRepository recipeRepository;
     private final RecipeService recipeService;
     private final UserService userService;
 
-    public RatingService(RatingRepository ratingRepository, RecipeService recipeService, UserService userService) {
+    public RatingService(RatingRepository ratingRepository, RecipeRepository recipeRepository, RecipeService recipeService, UserService userService) {
         this.ratingRepository = ratingRepository;
+        this.recipeRepository = recipeRepository;
         this.recipeService = recipeService;
         this.userService = userService;
     }
 
+    /**
+     * Reads the stored average on its own, without loading the recipe.
+     */
     public double getAvgForRecipe(Long recipeId) {
-        Recipe recipe = recipeService.findById(recipeId);
-        return ratingRepository.getAvgForRecipe(recipe);
+        return recipeRepository
+                .findRatingById(recipeId)
+                .orElseThrow(() -> new NotFoundException(String.format("Recipe with id %d not found.", recipeId)));
     }
 
     public Rating getUserRatingForRecipe(String username, Long recipeId) {
@@ -40,25 +49,44 @@ public class RatingService {
         return optionalRating.orElseGet(() -> new Rating(null, null, null, 0.0));
     }
 
-    public Rating rate(String username, RatingModel ratingModel) {
+    /**
+     * Inserts or replaces the user's rating of a recipe. The recipe row stays locked until the transaction ends,
+     * so concurrent ratings of the same recipe, including a user's own double click, see each other's rows
+     * instead of inserting duplicates, and the rating aggregate is adjusted exactly once per change.
+     *
+     * @return the recipe's rating aggregate after the change, derived from the locked row without re-reading it
+     */
+    @Transactional
+    public RatingAggregate rate(String username, RatingModel ratingModel) {
         validateRating(ratingModel);
         UserEntity userEntity = userService.findByUsername(username);
-        Recipe recipe = recipeService.findById(ratingModel.recipeId);
-        Optional<Rating> optionalRating = ratingRepository.findByUserAndRecipe(userEntity, recipe);
+        Long recipeId = ratingModel.recipeId;
+        RatingAggregate aggregate = recipeRepository
+                .lockRatingAggregateById(recipeId)
+                .orElseThrow(() -> new NotFoundException(String.format("Recipe with id %d not found.", recipeId)));
+        Optional<Rating> optionalRating = ratingRepository.findByUserIdAndRecipeId(userEntity.getId(), recipeId);
         Rating rating;
+        double sumDelta;
+        long countDelta;
         if (!optionalRating.isPresent()) {
             rating = new Rating();
-            rating.setRecipe(recipe);
+            rating.setRecipe(recipeRepository.getOne(recipeId));
             rating.setUser(userEntity);
             rating.setRating(ratingModel.rating);
+            sumDelta = ratingModel.rating;
+            countDelta = 1;
         }
         else {
             rating = optionalRating.get();
+            sumDelta = ratingModel.rating - rating.getRating();
+            countDelta = 0;
             rating.setRating(ratingModel.rating);
         }
         validateAuthority(username, rating);
 
-        return ratingRepository.save(rating);
+        ratingRepository.save(rating);
+        recipeRepository.adjustRating(recipeId, sumDelta, countDelta);
+        return aggregate.plus(sumDelta, countDelta);
     }
 
     private void validateRating(RatingModel ratingModel) {
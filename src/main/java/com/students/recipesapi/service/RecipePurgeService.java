@@ -0,0 +1,133 @@
+package com.students.recipesapi.service;
+
+import com.students.recipesapi.repository.CommentRepository;
+import com.students.recipesapi.repository.RatingRepository;
+import com.students.recipesapi.repository.RecipeIngredientRepository;
+import com.students.recipesapi.repository.RecipeRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Removes a recipe together with its ingredients, comments and ratings using set-based DELETE statements.
+ * Small recipes are removed inside the caller's transaction. Recipes with many children are only marked as
+ * deleted by the caller and purged here in the background, one short transaction per chunk, so that deleting
+ * a popular recipe never holds row locks for long. Purges interrupted by a restart resume on startup. The image
+ * of a purged recipe is released to ImageService.
+ */
+@Service
+public class RecipePurgeService {
+    private static final Logger log = LoggerFactory.getLogger(RecipePurgeService.class);
+
+    private final RecipeRepository recipeRepository;
+    private final RecipeIngredientRepository ingredientRepository;
+    private final CommentRepository commentRepository;
+    private final RatingRepository ratingRepository;
+    private final ImageService imageService;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "recipe-purge");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public RecipePurgeService(
+            RecipeRepository recipeRepository,
+            RecipeIngredientRepository ingredientRepository,
+            CommentRepository commentRepository,
+            RatingRepository ratingRepository,
+            ImageService imageService,
+            TransactionTemplate transactionTemplate,
+            @Value("${recipes.delete.chunk-size:1000}") int chunkSize
+    ) {
+        this.recipeRepository = recipeRepository;
+        this.ingredientRepository = ingredientRepository;
+        this.commentRepository = commentRepository;
+        this.ratingRepository = ratingRepository;
+        this.imageService = imageService;
+        this.transactionTemplate = transactionTemplate;
+        this.chunkSize = chunkSize;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumePurges() {
+        recipeRepository.findDeletedIds().forEach(this::schedule);
+    }
+
+    /**
+     * Deletes the recipe and all of its children with four statements. Has to run inside a transaction.
+     */
+    public void deleteNow(Long recipeId) {
+        ingredientRepository.deleteByRecipeId(recipeId);
+        commentRepository.deleteByRecipeId(recipeId);
+        ratingRepository.deleteByRecipeId(recipeId);
+        recipeRepository.deleteById(recipeId);
+    }
+
+    /**
+     * Schedules the purge of a recipe marked as deleted once the surrounding transaction, if any, commits.
+     */
+    public void purgeAfterCommit(Long recipeId) {
+        AfterCommit.run(() -> schedule(recipeId));
+    }
+
+    private void schedule(Long recipeId) {
+        executor.execute(() -> {
+            try {
+                purge(recipeId);
+            } catch (RuntimeException e) {
+                log.warn("Failed to purge recipe {}, it will be retried on the next startup", recipeId, e);
+            }
+        });
+    }
+
+    void purge(Long recipeId) {
+        long start = System.currentTimeMillis();
+        int comments = 0;
+        int ratings = 0;
+        int deleted;
+        do {
+            deleted = deleteChunk(() -> commentRepository.findIdsByRecipeId(recipeId, PageRequest.of(0, chunkSize)), commentRepository::deleteByIdIn);
+            comments += deleted;
+        } while (deleted == chunkSize);
+        do {
+            deleted = deleteChunk(() -> ratingRepository.findIdsByRecipeId(recipeId, PageRequest.of(0, chunkSize)), ratingRepository::deleteByIdIn);
+            ratings += deleted;
+        } while (deleted == chunkSize);
+        String imageHash = transactionTemplate.execute(status -> {
+            String hash = recipeRepository.findImageHashById(recipeId).orElse(null);
+            ingredientRepository.deleteByRecipeId(recipeId);
+            recipeRepository.deleteById(recipeId);
+            return hash;
+        });
+        imageService.releaseAfterCommit(imageHash);
+        log.info("Purged recipe {} with {} comments and {} ratings in {} ms",
+                recipeId, comments, ratings, System.currentTimeMillis() - start);
+    }
+
+    private int deleteChunk(Supplier<List<Long>> findIds, Function<List<Long>, Integer> deleteByIds) {
+        Integer deleted = transactionTemplate.execute(status -> {
+            List<Long> ids = findIds.get();
+            return ids.isEmpty() ? 0 : deleteByIds.apply(ids);
+        });
+        return deleted == null ? 0 : deleted;
+    }
+}
@@ -0,0 +1,78 @@
+package com.students.recipesapi.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the serialized JSON of recently read recipes, so that hot recipes are answered without touching the
+ * database or Jackson. The least recently used recipes are dropped once the cached JSON exceeds
+ * {@code recipes.response-cache.max-bytes}. Writers report changes to anything shown in a recipe response
+ * through the {@code invalidate...AfterCommit} methods.
+ */
+@Component
+public class RecipeResponseCache {
+    /**
+     * Rough per-entry cost of the map node, the entry and the array header, counted against the budget.
+     */
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    private final GenerationalLruCache<Long, Entry> entries;
+
+    public RecipeResponseCache(@Value("${recipes.response-cache.max-bytes:33554432}") long maxBytes) {
+        this.entries = new GenerationalLruCache<>(maxBytes, entry -> entry.json.length + ENTRY_OVERHEAD_BYTES);
+    }
+
+    public Entry get(Long recipeId) {
+        return entries.get(recipeId);
+    }
+
+    /**
+     * Returns the value to pass to {@link #put} for a recipe about to be loaded from the database.
+     */
+    public long generation() {
+        return entries.generation();
+    }
+
+    public void put(Long recipeId, long version, byte[] json, long loadedAtGeneration) {
+        entries.put(recipeId, new Entry(version, json), loadedAtGeneration);
+    }
+
+    public long getUsedBytes() {
+        return entries.weight();
+    }
+
+    /**
+     * Drops the recipe once the surrounding transaction, if any, commits.
+     */
+    public void invalidateAfterCommit(Long recipeId) {
+        AfterCommit.run(() -> invalidate(recipeId));
+    }
+
+    /**
+     * Drops every recipe once the surrounding transaction, if any, commits. Meant for changes to products or
+     * users, which are shown in recipes without a cheap way to tell which.
+     */
+    public void invalidateAllAfterCommit() {
+        AfterCommit.run(this::invalidateAll);
+    }
+
+    public void invalidate(Long recipeId) {
+        entries.invalidate(recipeId);
+    }
+
+    public void invalidateAll() {
+        entries.invalidateAll();
+    }
+
+    /**
+     * A recipe response as JSON, with the recipe version it was rendered at.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Entry {
+        private final long version;
+        private final byte[] json;
+    }
+}
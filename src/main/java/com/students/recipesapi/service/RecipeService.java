@@ -3,88 +3,325 @@ package com.students.recipesapi.service;
 import com.students.recipesapi.entity.*;
 import com.students.recipesapi.exception.InvalidInputException;
 import com.students.recipesapi.exception.NotFoundException;
+import com.students.recipesapi.model.ImageUpload;
+import com.students.recipesapi.model.RecipeCursor;
 import com.students.recipesapi.model.RecipeModel;
-import com.students.recipesapi.repository.CommentRepository;
-import com.students.recipesapi.repository.RatingRepository;
+import com.students.recipesapi.model.RecipePage;
+import com.students.recipesapi.model.RecipeSummary;
 import com.students.recipesapi.repository.RecipeIngredientRepository;
 import com.students.recipesapi.repository.RecipeRepository;
-import org.postgresql.util.Base64;
+import com.students.recipesapi.search.RecipeSearchIndex;
+import com.students.recipesapi.search.SearchHit;
+import org.hibernate.Hibernate;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.DigestUtils;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.stream.Collectors;
 
 @Service
 public class RecipeService {
     private final RecipeRepository recipeRepository;
-    private final CommentRepository commentRepository;
     private final RecipeIngredientRepository ingredientRepository;
     private final UserService userService;
     private final ProductService productService;
-    private final RatingRepository ratingRepository;
+    private final RecipeSearchIndex searchIndex;
+    private final ImageService imageService;
+    private final RecipePurgeService purgeService;
+    private final RecipeResponseCache responseCache;
 
-    public RecipeService(RecipeRepository recipeRepository, CommentRepository commentRepository, RecipeIngredientRepository ingredientRepository, UserService userService, ProductService productService, RatingRepository ratingRepository) {
+    @Value("${recipes.page.default-size:20}")
+    private int defaultPageSize;
+
+    @Value("${recipes.page.max-size:100}")
+    private int maxPageSize;
+
+    @Value("${recipes.delete.tombstone-threshold:5000}")
+    private long tombstoneThreshold;
+
+    /**
+     * Most search hits bound to one query, well below the 32767 bind parameters PostgreSQL accepts.
+     */
+    @Value("${recipes.search.max-ids-per-query:5000}")
+    private int maxIdsPerQuery;
+
+    public RecipeService(RecipeRepository recipeRepository, RecipeIngredientRepository ingredientRepository, UserService userService, ProductService productService, RecipeSearchIndex searchIndex, ImageService imageService, RecipePurgeService purgeService, RecipeResponseCache responseCache) {
         this.recipeRepository = recipeRepository;
-        this.commentRepository = commentRepository;
         this.ingredientRepository = ingredientRepository;
         this.userService = userService;
         this.productService = productService;
-        this.ratingRepository = ratingRepository;
+        this.searchIndex = searchIndex;
+        this.imageService = imageService;
+        this.purgeService = purgeService;
+        this.responseCache = responseCache;
     }
 
-    public List<Recipe> findAll() {
-        return recipeRepository.findAll();
+    /**
+     * Loads the recipe with everything RecipeResponse shows: the joined graph first, then its tags in a second
+     * select, which keeps the tags from multiplying the joined ingredient rows.
+     */
+    @Transactional(readOnly = true)
+    public Recipe findById(Long id) {
+        Recipe recipe = recipeRepository
+                .findDetailById(id)
+                .orElseThrow(() -> new NotFoundException(String.format("Recipe with id %d not found.", id)));
+        Hibernate.initialize(recipe.getTags());
+        return recipe;
     }
 
-    public Recipe findById(Long id) {
+    private Recipe findForEdit(Long id) {
         return recipeRepository
-                .findById(id)
+                .findForEditById(id)
                 .orElseThrow(() -> new NotFoundException(String.format("Recipe with id %d not found.", id)));
     }
 
-    @Transactional
-    public List<Recipe> findByQuerySorted(String query, String sort, String direction) {
-        query = query.toLowerCase(Locale.ROOT);
-        sort = sort.toLowerCase(Locale.ROOT);
-        direction = direction.toLowerCase(Locale.ROOT);
-
-        List<Recipe> recipes = recipeRepository.findAllByQuery(query);
-
-        if (!sort.isEmpty()) {
-            Comparator<Recipe> comparator = null;
-
-            switch (sort) {
-                case "title":
-                    comparator = Comparator.comparing(Recipe::getTitle);
-                    break;
-                case "creationdate":
-                    comparator = (r1, r2) -> {
-                        LocalDateTime date1 = LocalDateTime.parse(r1.getCreationDate());
-                        LocalDateTime date2 = LocalDateTime.parse(r2.getCreationDate());
-                        return date1.compareTo(date2);
-                    };
-                    break;
-                case "rating":
-                    for (Recipe r : recipes) {
-                        r.setRating(ratingRepository.getAvgForRecipe(r));
-                    }
+    /**
+     * Returns a value that changes whenever the recipe's response, comments or rating change, read with a
+     * single primary key lookup.
+     */
+    public long findVersion(Long id) {
+        return recipeRepository
+                .findVersionById(id)
+                .orElseThrow(() -> new NotFoundException(String.format("Recipe with id %d not found.", id)));
+    }
 
-                    comparator = Comparator.comparing(Recipe::getRating);
-                    break;
-            }
+    @Transactional(readOnly = true)
+    public RecipePage<Recipe> findAll(Integer page, Integer size, String cursor) {
+        return loadRecipePage(findAllIds(page, size, cursor));
+    }
+
+    @Transactional(readOnly = true)
+    public RecipePage<RecipeSummary> findAllSummaries(Integer page, Integer size, String cursor) {
+        return loadSummaryPage(findAllIds(page, size, cursor));
+    }
+
+    /**
+     * Returns the ids on one page of all recipes, so that callers can check the page's version tag before
+     * loading the recipes with {@link #loadRecipePage} or {@link #loadSummaryPage}.
+     */
+    public RecipePage<Long> findAllIds(Integer page, Integer size, String cursor) {
+        return findPage(null, "", "asc", page, size, cursor);
+    }
+
+    @Transactional(readOnly = true)
+    public RecipePage<Recipe> loadRecipePage(RecipePage<Long> page) {
+        return page.map(this::loadRecipes);
+    }
+
+    @Transactional(readOnly = true)
+    public RecipePage<RecipeSummary> loadSummaryPage(RecipePage<Long> page) {
+        return page.map(this::loadSummaries);
+    }
+
+    /**
+     * Searches recipes through the full-text index. Without an explicit sort the results are ranked by relevance,
+     * otherwise the matching recipes are sorted and paginated by the database.
+     */
+    @Transactional(readOnly = true)
+    public RecipePage<Recipe> findByQuerySorted(String query, String sort, String direction, Integer page, Integer size, String cursor) {
+        return findMatchingIds(query, sort, direction, page, size, cursor).map(this::loadRecipes);
+    }
+
+    @Transactional(readOnly = true)
+    public RecipePage<RecipeSummary> findSummariesByQuerySorted(String query, String sort, String direction, Integer page, Integer size, String cursor) {
+        return findMatchingIds(query, sort, direction, page, size, cursor).map(this::loadSummaries);
+    }
+
+    private RecipePage<Long> findMatchingIds(String query, String sort, String direction, Integer page, Integer size, String cursor) {
+        if (searchIndex.isMatchAll(query)) {
+            return findPage(null, sort, direction, page, size, cursor);
+        }
+        if (sort.isEmpty()) {
+            return findRanked(query, page, size, cursor);
+        }
+        List<Long> matchingIds = searchIndex
+                .search(query)
+                .stream()
+                .map(SearchHit::getRecipeId)
+                .collect(Collectors.toList());
+        return findPage(matchingIds, sort, direction, page, size, cursor);
+    }
+
+    private RecipePage<Long> findPage(Collection<Long> ids, String sort, String direction, Integer page, Integer size, String cursor) {
+        String sortProperty = toSortProperty(sort.toLowerCase(Locale.ROOT));
+        boolean descending = direction.toLowerCase(Locale.ROOT).equals("desc");
+        int limit = resolvePageSize(size);
+
+        int offset = 0;
+        Object afterValue = null;
+        Long afterId = null;
+        if (cursor != null) {
+            RecipeCursor recipeCursor = RecipeCursor.decode(cursor);
+            afterId = recipeCursor.getId();
+            afterValue = toSortValue(sortProperty, recipeCursor.getValue());
+        } else {
+            offset = resolveOffset(page, limit);
+        }
+
+        if (ids != null && ids.size() > maxIdsPerQuery) {
+            ids = narrowToCandidates(ids, sortProperty, descending, afterValue, afterId, offset + limit);
+        }
+        List<Object[]> keys = recipeRepository.findPageKeys(ids, sortProperty, descending, afterValue, afterId, offset, limit);
+        List<Long> recipeIds = keys.stream().map(key -> (Long) key[0]).collect(Collectors.toList());
+        String nextCursor = null;
+        if (keys.size() == limit) {
+            Object[] last = keys.get(limit - 1);
+            String lastValue = sortProperty.equals("id") ? null : Objects.toString(last[1], null);
+            nextCursor = new RecipeCursor((Long) last[0], lastValue).encode();
+        }
+        return new RecipePage<>(recipeIds, nextCursor, versionTag(keys, nextCursor));
+    }
 
-            if (direction.equals("desc") && comparator != null) {
-                comparator = comparator.reversed();
+    /**
+     * Narrows search hits that don't fit one query to the candidates for the requested page. A recipe among the
+     * first {@code rowsNeeded} of all hits is also among the first {@code rowsNeeded} of whichever chunk holds it,
+     * so each round keeps only those, until the candidates fit one query. The database still does all ordering,
+     * so pages follow its collation. Each round at least halves the ids as long as {@code rowsNeeded} is at most
+     * half a chunk; deeper offset pages of such searches have to be reached through the cursor.
+     */
+    private List<Long> narrowToCandidates(Collection<Long> ids, String sortProperty, boolean descending, Object afterValue, Long afterId, int rowsNeeded) {
+        if (rowsNeeded > maxIdsPerQuery / 2) {
+            throw new InvalidInputException("This search matches too many recipes for such a deep page, use the page cursor instead.");
+        }
+        List<Long> candidates = new ArrayList<>(ids);
+        while (candidates.size() > maxIdsPerQuery) {
+            List<Long> remaining = candidates;
+            candidates = new ArrayList<>();
+            for (int from = 0; from < remaining.size(); from += maxIdsPerQuery) {
+                List<Long> chunk = remaining.subList(from, Math.min(from + maxIdsPerQuery, remaining.size()));
+                for (Object[] key : recipeRepository.findPageKeys(chunk, sortProperty, descending, afterValue, afterId, 0, rowsNeeded)) {
+                    candidates.add((Long) key[0]);
+                }
             }
+        }
+        return candidates;
+    }
+
+    private RecipePage<Long> findRanked(String query, Integer page, Integer size, String cursor) {
+        int limit = resolvePageSize(size);
+        List<SearchHit> hits = searchIndex.search(query);
 
-            recipes.sort(comparator);
+        int from;
+        if (cursor != null) {
+            RecipeCursor recipeCursor = RecipeCursor.decode(cursor);
+            SearchHit lastSeen = new SearchHit(recipeCursor.getId(), toScore(recipeCursor.getValue()));
+            int position = Collections.binarySearch(hits, lastSeen, SearchHit.RANKING);
+            from = position >= 0 ? position + 1 : -position - 1;
+        } else {
+            from = Math.min(resolveOffset(page, limit), hits.size());
         }
+        List<SearchHit> pageHits = hits.subList(from, Math.min(from + limit, hits.size()));
+        List<Long> recipeIds = pageHits.stream().map(SearchHit::getRecipeId).collect(Collectors.toList());
+
+        String nextCursor = null;
+        if (from + limit < hits.size()) {
+            SearchHit last = pageHits.get(pageHits.size() - 1);
+            nextCursor = new RecipeCursor(last.getRecipeId(), String.valueOf(last.getScore())).encode();
+        }
+        return new RecipePage<>(recipeIds, nextCursor, null);
+    }
+
+    private static String versionTag(List<Object[]> keys, String nextCursor) {
+        StringBuilder versions = new StringBuilder();
+        for (Object[] key : keys) {
+            versions.append(key[0]).append(':').append(key[2]).append(',');
+        }
+        versions.append(nextCursor);
+        return DigestUtils.md5DigestAsHex(versions.toString().getBytes(StandardCharsets.UTF_8));
+    }
 
-        return recipes;
+    /**
+     * Loads recipes through the detail entity graph. Tags stay lazy and are batch fetched on first access, which
+     * only works in a read-only transaction: a flush on commit would drop them from Hibernate's batch queue.
+     */
+    private List<Recipe> loadRecipes(List<Long> ids) {
+        if (ids.isEmpty()) return Collections.emptyList();
+        Map<Long, Recipe> recipesById = new HashMap<>();
+        recipeRepository.findListByIdIn(ids).forEach(recipe -> recipesById.put(recipe.getId(), recipe));
+        return inOrder(ids, recipesById);
     }
 
+    private List<RecipeSummary> loadSummaries(List<Long> ids) {
+        if (ids.isEmpty()) return Collections.emptyList();
+        Map<Long, RecipeSummary> summariesById = new HashMap<>();
+        recipeRepository.findSummariesByIdIn(ids).forEach(summary -> summariesById.put(summary.getId(), summary));
+        for (Object[] tag : recipeRepository.findTagsByIdIn(ids)) {
+            summariesById.get((Long) tag[0]).getTags().add((String) tag[1]);
+        }
+        return inOrder(ids, summariesById);
+    }
+
+    private static <T> List<T> inOrder(List<Long> ids, Map<Long, T> byId) {
+        return ids
+                .stream()
+                .map(byId::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    private int resolvePageSize(Integer size) {
+        int limit = size == null ? defaultPageSize : size;
+        if (limit < 1 || limit > maxPageSize) {
+            throw new InvalidInputException(String.format("Page size has to be between 1 and %d.", maxPageSize));
+        }
+        return limit;
+    }
+
+    private int resolveOffset(Integer page, int limit) {
+        if (page == null) return 0;
+        if (page < 0 || page > Integer.MAX_VALUE / limit) {
+            throw new InvalidInputException("Invalid page number.");
+        }
+        return page * limit;
+    }
+
+    private double toScore(String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NullPointerException | NumberFormatException e) {
+            throw new InvalidInputException("Page cursor doesn't match the requested sort.");
+        }
+    }
+
+    private String toSortProperty(String sort) {
+        switch (sort) {
+            case "":
+                return "id";
+            case "title":
+                return "title";
+            case "creationdate":
+                return "creationDate";
+            case "rating":
+                return "rating";
+            default:
+                throw new InvalidInputException(String.format("Unknown sort \"%s\".", sort));
+        }
+    }
+
+    private Object toSortValue(String sortProperty, String value) {
+        if (sortProperty.equals("id")) return null;
+        if (value == null) throw new InvalidInputException("Page cursor doesn't match the requested sort.");
+        try {
+            switch (sortProperty) {
+                case "creationDate":
+                    return LocalDateTime.parse(value);
+                case "rating":
+                    return Double.valueOf(value);
+                default:
+                    return value;
+            }
+        } catch (DateTimeParseException | NumberFormatException e) {
+            throw new InvalidInputException("Page cursor doesn't match the requested sort.");
+        }
+    }
+
+    @Transactional
     public Recipe create(String username, RecipeModel recipeModel) {
         validateRecipeModelForCreate(recipeModel);
         UserEntity author = requireUser(username);
@@ -94,90 +331,108 @@ public class RecipeService {
         recipe.setDescription(recipeModel.getDescription());
         recipe.setTags(new HashSet<>(recipeModel.getTags()));
         recipe.setAuthor(author);
-        recipe.setImage(Base64.decode(recipeModel.getImage()));
-        recipe.setCreationDate(LocalDateTime.now(ZoneId.of("Europe/Warsaw")).toString());
-        recipe.setModificationDate(LocalDateTime.now(ZoneId.of("Europe/Warsaw")).toString());
+        recipe.setImageHash(imageService.storeBase64(recipeModel.getImage()));
+        recipe.setCreationDate(LocalDateTime.now(ZoneId.of("Europe/Warsaw")));
+        recipe.setModificationDate(LocalDateTime.now(ZoneId.of("Europe/Warsaw")));
 
         recipe = recipeRepository.save(recipe);
+        recipe.setIngredients(saveIngredients(recipe, recipeModel.getIngredients(), recipeModel.getQuantities()));
 
-        try {
-            Set<RecipeIngredient> ingredients = new HashSet<>();
-            for (int ingredientIndex = 0; ingredientIndex < recipeModel.getIngredients().size(); ingredientIndex++) {
-                RecipeIngredient ingredient = new RecipeIngredient();
-                Product product = productService.findById(recipeModel.getIngredients().get(ingredientIndex));
-                ingredient.setId(new RecipeIngredientKey(recipe.getId(), product.getId()));
-                ingredient.setRecipe(recipe);
-                ingredient.setProduct(product);
-                ingredient.setQuantity(recipeModel.getQuantities().get(ingredientIndex));
-                ingredient = ingredientRepository.save(ingredient);
-                ingredients.add(ingredient);
-            }
-            recipe.setIngredients(ingredients);
-        } catch (Exception e) {
-            recipeRepository.delete(recipe);
-            throw new InvalidInputException("Couldn't find the necessary ingredients.");
-        }
-
+        searchIndex.index(recipe);
         return recipe;
     }
 
+    /**
+     * Deletes the recipe with set-based statements. A recipe with more comments and ratings than the tombstone
+     * threshold is only marked as deleted, which hides it immediately, and its rows are purged in the background.
+     */
+    @Transactional
     public void delete(String username, Long recipeId) {
-        Recipe recipe = findById(recipeId);
+        Recipe recipe = findForEdit(recipeId);
         UserEntity author = userService.findByUsername(username);
         validateAuthorMatch(author, recipe);
-        deleteIngredientsForRecipe(recipe);
-        deleteCommentsForRecipe(recipe);
-        deleteRatingsForRecipe(recipe);
-        recipeRepository.deleteById(recipeId);
+        if (recipe.getRatingCount() + recipe.getCommentCount() > tombstoneThreshold) {
+            recipe.setDeleted(true);
+            purgeService.purgeAfterCommit(recipeId);
+        } else {
+            purgeService.deleteNow(recipeId);
+            imageService.releaseAfterCommit(recipe.getImageHash());
+        }
+        searchIndex.remove(recipeId);
+        responseCache.invalidateAfterCommit(recipeId);
     }
 
+    @Transactional
     public Recipe update(String username, RecipeModel recipeModel) {
         validateRecipeModelForUpdate(recipeModel);
         UserEntity author = requireUser(username);
-        Recipe originalRecipe = findById(recipeModel.getId());
+        Recipe originalRecipe = findForEdit(recipeModel.getId());
         validateAuthorMatch(author, originalRecipe);
 
         if (recipeModel.getTitle() != null) originalRecipe.setTitle(recipeModel.getTitle());
         if (recipeModel.getDescription() != null) originalRecipe.setDescription(recipeModel.getDescription());
         if (recipeModel.getIngredients() != null) {
             deleteIngredientsForRecipe(originalRecipe);
-            Set<RecipeIngredient> ingredients = new HashSet<>();
-            for (int ingredientIndex = 0; ingredientIndex < recipeModel.getIngredients().size(); ingredientIndex++) {
-                RecipeIngredient ingredient = new RecipeIngredient();
-                Product product = productService.findById(recipeModel.getIngredients().get(ingredientIndex));
-                ingredient.setId(new RecipeIngredientKey(originalRecipe.getId(), product.getId()));
-                ingredient.setRecipe(originalRecipe);
-                ingredient.setProduct(product);
-                ingredient.setQuantity(recipeModel.getQuantities().get(ingredientIndex));
-                ingredient = ingredientRepository.save(ingredient);
-                ingredients.add(ingredient);
-            }
-            originalRecipe.setIngredients(ingredients);
+            originalRecipe.setIngredients(saveIngredients(originalRecipe, recipeModel.getIngredients(), recipeModel.getQuantities()));
         }
         if (recipeModel.getTags() != null)
             originalRecipe.setTags(new LinkedHashSet<>(recipeModel.getTags()));
-        if (recipeModel.getImage() != null) originalRecipe.setImage(recipeModel.getImage());
-        originalRecipe.setModificationDate(LocalDateTime.now(ZoneId.of("Europe/Warsaw")).toString());
+        if (recipeModel.getImage() != null) replaceImage(originalRecipe, imageService.storeBase64(recipeModel.getImage()));
+        originalRecipe.setModificationDate(LocalDateTime.now(ZoneId.of("Europe/Warsaw")));
 
-        return recipeRepository.save(originalRecipe);
+        Recipe updatedRecipe = recipeRepository.save(originalRecipe);
+        searchIndex.index(updatedRecipe);
+        responseCache.invalidateAfterCommit(updatedRecipe.getId());
+        return updatedRecipe;
     }
 
     @Transactional
-    public void deleteIngredientsForRecipe(Recipe recipe) {
-        List<RecipeIngredient> ingredients = ingredientRepository.findByRecipeId(recipe.getId());
-        ingredientRepository.deleteAll(ingredients);
+    public void updateImage(String username, Long recipeId, ImageUpload image) {
+        UserEntity author = requireUser(username);
+        Recipe originalRecipe = findForEdit(recipeId);
+        validateAuthorMatch(author, originalRecipe);
+
+        replaceImage(originalRecipe, imageService.store(image));
+        originalRecipe.setModificationDate(LocalDateTime.now(ZoneId.of("Europe/Warsaw")));
+        recipeRepository.save(originalRecipe);
+        responseCache.invalidateAfterCommit(recipeId);
     }
 
-    @Transactional
-    public void deleteCommentsForRecipe(Recipe recipe) {
-        List<Comment> comments = commentRepository.findForRecipe(recipe.getId());
-        commentRepository.deleteAll(comments);
+    private void replaceImage(Recipe recipe, String imageHash) {
+        if (!imageHash.equals(recipe.getImageHash())) imageService.releaseAfterCommit(recipe.getImageHash());
+        recipe.setImageHash(imageHash);
+    }
+
+    /**
+     * Resolves all products with one query and inserts the ingredient rows as one JDBC batch.
+     * A product listed more than once keeps its last quantity.
+     */
+    private Set<RecipeIngredient> saveIngredients(Recipe recipe, List<Long> productIds, List<String> quantities) {
+        Map<Long, String> quantitiesByProduct = new LinkedHashMap<>();
+        for (int ingredientIndex = 0; ingredientIndex < productIds.size(); ingredientIndex++) {
+            quantitiesByProduct.put(productIds.get(ingredientIndex), quantities.get(ingredientIndex));
+        }
+
+        Map<Long, Product> productsById = new HashMap<>();
+        productService.findAllById(quantitiesByProduct.keySet()).forEach(product -> productsById.put(product.getId(), product));
+        if (!productsById.keySet().containsAll(quantitiesByProduct.keySet())) {
+            throw new InvalidInputException("Couldn't find the necessary ingredients.");
+        }
+
+        Set<RecipeIngredient> ingredients = new HashSet<>();
+        quantitiesByProduct.forEach((productId, quantity) -> ingredients.add(new RecipeIngredient(
+                new RecipeIngredientKey(recipe.getId(), productId),
+                recipe,
+                productsById.get(productId),
+                quantity
+        )));
+        ingredientRepository.persistAll(ingredients);
+        return ingredients;
     }
 
     @Transactional
-    public void deleteRatingsForRecipe(Recipe recipe) {
-        List<Rating> ratings = ratingRepository.findForRecipe(recipe.getId());
-        ratingRepository.deleteAll(ratings);
+    public void deleteIngredientsForRecipe(Recipe recipe) {
+        ingredientRepository.deleteByRecipeId(recipe.getId());
     }
 
     private void validateRecipeModelForCreate(RecipeModel recipeModel) {
@@ -0,0 +1,82 @@
+package com.students.recipesapi.service;
+
+import com.students.recipesapi.repository.RecoveryTokenRepository;
+import com.students.recipesapi.repository.UserRepository;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+/**
+ * Removes expired recovery and activation tokens, together with accounts whose activation link expired unused.
+ * Expired tokens are found through the expiration date index and deleted with set-based statements, one short
+ * transaction per chunk.
+ */
+@Service
+public class RecoveryTokenCleanupService {
+    private static final Logger log = LoggerFactory.getLogger(RecoveryTokenCleanupService.class);
+
+    private final RecoveryTokenRepository recoveryTokenRepository;
+    private final UserRepository userRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${recovery-tokens.cleanup.chunk-size:500}")
+    private int chunkSize;
+
+    public RecoveryTokenCleanupService(RecoveryTokenRepository recoveryTokenRepository, UserRepository userRepository, TransactionTemplate transactionTemplate) {
+        this.recoveryTokenRepository = recoveryTokenRepository;
+        this.userRepository = userRepository;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @Scheduled(fixedDelay = 5 * 60 * 1000)
+    public CleanupResult removeExpiredRecoveryTokens() {
+        long start = System.currentTimeMillis();
+        LocalDateTime now = LocalDateTime.now(ZoneId.of("Europe/Warsaw"));
+        int tokens = 0;
+        int users = 0;
+        while (true) {
+            int[] removed = transactionTemplate.execute(status -> removeChunk(now));
+            if (removed == null || removed[0] == 0) break;
+            tokens += removed[0];
+            users += removed[1];
+        }
+        CleanupResult result = new CleanupResult(tokens, users, System.currentTimeMillis() - start);
+        if (tokens > 0) {
+            log.info("Removed {} expired recovery tokens and {} unactivated accounts in {} ms",
+                    result.getTokens(), result.getUsers(), result.getDurationInMilliseconds());
+        }
+        return result;
+    }
+
+    private int[] removeChunk(LocalDateTime now) {
+        List<Long> tokenIds = recoveryTokenRepository.findExpiredIds(now, PageRequest.of(0, chunkSize));
+        if (tokenIds.isEmpty()) return new int[]{0, 0};
+
+        List<Long> userIds = recoveryTokenRepository.findUnactivatedUserIds(tokenIds);
+        int tokens = recoveryTokenRepository.deleteByIdIn(tokenIds);
+        int users = 0;
+        if (!userIds.isEmpty()) {
+            tokens += recoveryTokenRepository.deleteByUserIdIn(userIds);
+            users = userRepository.deleteByIdIn(userIds);
+        }
+        return new int[]{tokens, users};
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class CleanupResult {
+        private final int tokens;
+        private final int users;
+        private final long durationInMilliseconds;
+    }
+}
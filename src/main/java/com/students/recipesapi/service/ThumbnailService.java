@@ -0,0 +1,246 @@
+package com.students.recipesapi.service;
+
+import com.students.recipesapi.model.ImageVariant;
+import com.students.recipesapi.repository.StoredImageRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.sql.Blob;
+import java.sql.SQLException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * Generates downscaled variants of stored images in the background and caches them on disk, so that
+ * list pages can fetch small images instead of the uploaded originals. Variants that are missing from
+ * the cache (not generated yet, or the cache directory was wiped) are regenerated on first request.
+ */
+@Service
+public class ThumbnailService {
+    private static final Logger log = LoggerFactory.getLogger(ThumbnailService.class);
+
+    private static final ImageVariant[] VARIANTS = {ImageVariant.MEDIUM, ImageVariant.THUMBNAIL};
+    private static final String[] FORMATS = {"jpg", "png"};
+    private static final BufferedImage NOT_AN_IMAGE = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+
+    private final StoredImageRepository imageRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Path cacheDirectory;
+    private final ExecutorService executor;
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    /**
+     * Variants that are not generated because the original is small enough or not an image, by hash and variant.
+     * Bounded, since a forgotten entry only costs one more decode of the image.
+     */
+    private final GenerationalLruCache<String, Boolean> servedAsOriginal;
+
+    public ThumbnailService(
+            StoredImageRepository imageRepository,
+            TransactionTemplate transactionTemplate,
+            @Value("${images.cache.path:${java.io.tmpdir}/recipes-api/images}") String cacheDirectory,
+            @Value("${images.thumbnails.threads:2}") int threads,
+            @Value("${images.thumbnails.queue-size:100}") int queueSize,
+            @Value("${images.thumbnails.served-as-original.max-size:10000}") int servedAsOriginalMaxSize
+    ) {
+        this.imageRepository = imageRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.cacheDirectory = Paths.get(cacheDirectory);
+        this.servedAsOriginal = new GenerationalLruCache<>(servedAsOriginalMaxSize, entry -> 1);
+        this.executor = new ThreadPoolExecutor(
+                threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "thumbnails");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Schedules variant generation for a newly stored image once the surrounding transaction, if any, commits.
+     */
+    public void requestVariants(String hash) {
+        AfterCommit.run(() -> schedule(hash));
+    }
+
+    /**
+     * Returns the cached file of a variant. When the variant is not cached yet, its generation is scheduled
+     * and the caller should serve the original image in the meantime.
+     */
+    public Optional<Path> findVariant(String hash, ImageVariant variant) {
+        if (variant == ImageVariant.ORIGINAL || servedAsOriginal.get(key(hash, variant)) != null) return Optional.empty();
+        for (String format : FORMATS) {
+            Path path = variantPath(hash, variant, format);
+            if (Files.exists(path)) return Optional.of(path);
+        }
+        schedule(hash);
+        return Optional.empty();
+    }
+
+    /**
+     * Removes the cached variants of a deleted image.
+     */
+    public void deleteVariants(String hash) {
+        for (ImageVariant variant : VARIANTS) {
+            servedAsOriginal.invalidate(key(hash, variant));
+            for (String format : FORMATS) {
+                try {
+                    Files.deleteIfExists(variantPath(hash, variant, format));
+                } catch (IOException e) {
+                    log.warn("Failed to delete the {} variant of image {}", variant, hash, e);
+                }
+            }
+        }
+    }
+
+    public static String contentType(Path variant) {
+        return variant.getFileName().toString().endsWith(".png") ? "image/png" : "image/jpeg";
+    }
+
+    private void schedule(String hash) {
+        if (!pending.add(hash)) return;
+        try {
+            executor.execute(() -> {
+                try {
+                    generateVariants(hash);
+                } finally {
+                    pending.remove(hash);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(hash);
+            log.warn("Thumbnail queue is full, skipping image {}", hash);
+        }
+    }
+
+    void generateVariants(String hash) {
+        try {
+            Optional<BufferedImage> decoded = transactionTemplate.execute(status -> imageRepository
+                    .findDataByHash(hash)
+                    .map(data -> decode(data, VARIANTS[0].getMaxDimension())));
+            if (decoded == null || !decoded.isPresent()) return;
+            BufferedImage source = decoded.get();
+            if (source == NOT_AN_IMAGE) {
+                for (ImageVariant variant : VARIANTS) serveAsOriginal(hash, variant);
+                return;
+            }
+            String format = source.getColorModel().hasAlpha() ? "png" : "jpg";
+            for (ImageVariant variant : VARIANTS) {
+                if (Math.max(source.getWidth(), source.getHeight()) <= variant.getMaxDimension()) {
+                    serveAsOriginal(hash, variant);
+                    continue;
+                }
+                // Each variant is scaled from the previous, larger one, which is cheaper than starting from the source.
+                source = scale(source, variant.getMaxDimension());
+                write(source, format, variantPath(hash, variant, format));
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to generate variants of image {}", hash, e);
+        }
+    }
+
+    /**
+     * Decodes the image while streaming it from the database, skipping source pixels when the image is much larger
+     * than needed so that a big upload is never fully decoded into memory. Returns {@link #NOT_AN_IMAGE} when the
+     * data is not in a format ImageIO can read.
+     */
+    private static BufferedImage decode(Blob data, int maxDimension) {
+        try (InputStream stream = data.getBinaryStream();
+             ImageInputStream input = ImageIO.createImageInputStream(stream)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) return NOT_AN_IMAGE;
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int longerSide = Math.max(reader.getWidth(0), reader.getHeight(0));
+                int subsampling = Math.max(1, longerSide / (2 * maxDimension));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to read the stored image.", e);
+        }
+    }
+
+    /**
+     * Scales the image down in steps of at most one half, since a single bilinear step over a larger
+     * ratio drops most source pixels and produces visible aliasing.
+     */
+    private static BufferedImage scale(BufferedImage source, int maxDimension) {
+        double ratio = (double) maxDimension / Math.max(source.getWidth(), source.getHeight());
+        int targetWidth = Math.max(1, (int) Math.round(source.getWidth() * ratio));
+        int targetHeight = Math.max(1, (int) Math.round(source.getHeight() * ratio));
+        int type = source.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+
+        BufferedImage current = source;
+        do {
+            int width = Math.max(targetWidth, current.getWidth() / 2);
+            int height = Math.max(targetHeight, current.getHeight() / 2);
+            BufferedImage step = new BufferedImage(width, height, type);
+            Graphics2D graphics = step.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.drawImage(current, 0, 0, width, height, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = step;
+        } while (current.getWidth() != targetWidth || current.getHeight() != targetHeight);
+        return current;
+    }
+
+    private static void write(BufferedImage image, String format, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path temporary = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            if (!ImageIO.write(image, format, temporary.toFile())) {
+                throw new IOException("No ImageIO writer for " + format);
+            }
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private Path variantPath(String hash, ImageVariant variant, String format) {
+        return cacheDirectory.resolve(variant.name().toLowerCase(Locale.ROOT)).resolve(hash + "." + format);
+    }
+
+    private void serveAsOriginal(String hash, ImageVariant variant) {
+        servedAsOriginal.put(key(hash, variant), Boolean.TRUE, servedAsOriginal.generation());
+    }
+
+    private static String key(String hash, ImageVariant variant) {
+        return hash + ":" + variant;
+    }
+}
@@ -6,40 +6,46 @@ import com.students.recipesapi.exception.*;
 import com.students.recipesapi.model.RecoveryModel;
 import com.students.recipesapi.model.RegisterModel;
 import com.students.recipesapi.model.UserUpdateModel;
+import com.students.recipesapi.repository.RecipeRepository;
 import com.students.recipesapi.repository.RecoveryTokenRepository;
 import com.students.recipesapi.repository.UserRepository;
+import com.students.recipesapi.search.RecipeSearchIndex;
+import com.students.recipesapi.security.PrincipalCache;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import javax.mail.*;
-import javax.mail.internet.InternetAddress;
-import javax.mail.internet.MimeMessage;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Service
 public class UserService {
     private final UserRepository userRepository;
     private final RecoveryTokenRepository recoveryTokenRepository;
     private final PasswordEncoder passwordEncoder;
-
-    @Value("${SUPPORT_EMAIL:DefaultEmail}")
-    private String supportEmail;
-
-    @Value("${SUPPORT_EMAIL_PASSWORD:DefaultPassword}")
-    private String supportEmailPassword;
+    private final PrincipalCache principalCache;
+    private final EmailService emailService;
+    private final RecipeRepository recipeRepository;
+    private final RecipeResponseCache responseCache;
+    private final RecipeSearchIndex searchIndex;
+    private final TransactionTemplate transactionTemplate;
 
     @Value("${ACCOUNTS_REQUIRE_ACTIVATION:false}")
     private boolean accountsRequireActivation;
 
-    public UserService(UserRepository userRepository, RecoveryTokenRepository recoveryTokenRepository, PasswordEncoder passwordEncoder) {
+    public UserService(UserRepository userRepository, RecoveryTokenRepository recoveryTokenRepository, PasswordEncoder passwordEncoder, PrincipalCache principalCache, EmailService emailService, RecipeRepository recipeRepository, RecipeResponseCache responseCache, RecipeSearchIndex searchIndex, TransactionTemplate transactionTemplate) {
         this.userRepository = userRepository;
         this.recoveryTokenRepository = recoveryTokenRepository;
         this.passwordEncoder = passwordEncoder;
+        this.principalCache = principalCache;
+        this.emailService = emailService;
+        this.recipeRepository = recipeRepository;
+        this.responseCache = responseCache;
+        this.searchIndex = searchIndex;
+        this.transactionTemplate = transactionTemplate;
     }
 
     public List<UserEntity> findAll() {
@@ -109,6 +115,10 @@ public class UserService {
         userRepository.save(recoveryToken.getUserEntity());
     }
 
+    /**
+     * Hashes a new password before the transaction starts, since hashing may wait for the bounded hashing pool and
+     * would hold a database connection meanwhile.
+     */
     public UserEntity update(String username, UserUpdateModel userUpdateModel) {
         if (username == null || username.isEmpty()) {
             throw new InvalidInputException("Tried to update user without a username.");
@@ -118,21 +128,33 @@ public class UserService {
             throw new InvalidInputException("An update model has to be provided.");
         }
 
-        Optional<UserEntity> userEntityOptional = userRepository.findByUsername(username);
-        if (!userEntityOptional.isPresent()) {
-            throw new NotFoundException(String.format("User with username \"%s\" not found.", username));
-        }
-
-        UserEntity userEntity = userEntityOptional.get();
-        if (userUpdateModel.getFirstName() != null) userEntity.setFirstName(userUpdateModel.getFirstName());
-        if (userUpdateModel.getLastName() != null) userEntity.setLastName(userUpdateModel.getLastName());
+        String encodedPassword = null;
         if (userUpdateModel.getPassword() != null) {
             validatePassword(userUpdateModel.getPassword());
-            userEntity.setPassword(passwordEncoder.encode(userUpdateModel.getPassword()));
+            encodedPassword = passwordEncoder.encode(userUpdateModel.getPassword());
         }
-        userRepository.save(userEntity);
+        String newPassword = encodedPassword;
 
-        return userEntity;
+        return transactionTemplate.execute(status -> {
+            Optional<UserEntity> userEntityOptional = userRepository.findByUsername(username);
+            if (!userEntityOptional.isPresent()) {
+                throw new NotFoundException(String.format("User with username \"%s\" not found.", username));
+            }
+
+            UserEntity userEntity = userEntityOptional.get();
+            if (userUpdateModel.getFirstName() != null) userEntity.setFirstName(userUpdateModel.getFirstName());
+            if (userUpdateModel.getLastName() != null) userEntity.setLastName(userUpdateModel.getLastName());
+            if (newPassword != null) userEntity.setPassword(newPassword);
+            userRepository.save(userEntity);
+            AfterCommit.run(() -> principalCache.invalidate(username));
+            recipeRepository.incrementVersionsForUser(userEntity.getId());
+            responseCache.invalidateAllAfterCommit();
+            if (userUpdateModel.getFirstName() != null || userUpdateModel.getLastName() != null) {
+                searchIndex.reindexAuthoredBy(userEntity.getId());
+            }
+
+            return userEntity;
+        });
     }
 
     public void sendRecoveryToken(String username) {
@@ -161,8 +183,10 @@ public class UserService {
         recoveryToken.getUserEntity().setPassword(passwordEncoder.encode(recoveryModel.getPassword()));
         userRepository.save(recoveryToken.getUserEntity());
         recoveryTokenRepository.delete(recoveryToken);
+        principalCache.invalidate(recoveryToken.getUserEntity().getUsername());
     }
 
+    @Transactional
     public void delete(String username) {
         validateUsername(username);
 
@@ -177,48 +201,21 @@ public class UserService {
         userEntity.setEnabled(false);
 
         userRepository.save(userEntity);
+        AfterCommit.run(() -> principalCache.invalidate(username));
+        recipeRepository.incrementVersionsForUser(userEntity.getId());
+        responseCache.invalidateAllAfterCommit();
+        searchIndex.reindexAuthoredBy(userEntity.getId());
 
         String subject = "Your Jedzonko.pl account has been deleted";
         String body = "Your Jedzonko.pl account has been deleted through the application.";
         sendEmail(username, subject, body);
     }
 
+    /**
+     * Queues the e-mail in the outbox; it is sent in the background by EmailService.
+     */
     public void sendEmail(String toEmail, String subject, String body) {
-        final String fromEmail = supportEmail;
-        final String password = supportEmailPassword;
-
-        Properties props = new Properties();
-        props.put("mail.smtp.host", "smtp.sendgrid.net"); //SMTP Host
-        props.put("mail.smtp.port", "587"); //TLS Port
-        props.put("mail.smtp.auth", "true"); //enable authentication
-        props.put("mail.smtp.starttls.enable", "true"); //enable STARTTLS
-        props.put("mail.smtp.ssl.trust", "smtp.sendgrid.net");
-
-        Authenticator auth = new Authenticator() {
-            protected PasswordAuthentication getPasswordAuthentication() {
-                return new PasswordAuthentication(fromEmail, password);
-            }
-        };
-        Session session = Session.getInstance(props, auth);
-
-        try {
-            MimeMessage msg = new MimeMessage(session);
-
-            msg.addHeader("Content-type", "text/HTML; charset=UTF-8");
-            msg.addHeader("format", "flowed");
-            msg.addHeader("Content-Transfer-Encoding", "8bit");
-
-            msg.setFrom(new InternetAddress("jedzonko.pl.uz@gmail.com", "Jedzonko.pl"));
-            msg.setReplyTo(InternetAddress.parse("jedzonko.pl.uz@gmail.com", false));
-            msg.setSentDate(new Date());
-            msg.setSubject(subject, "UTF-8");
-            msg.setText(body, "UTF-8");
-
-            msg.setRecipients(Message.RecipientType.TO, InternetAddress.parse(toEmail, false));
-            Transport.send(msg);
-        } catch (Exception e) {
-            throw new SendingEmailException("A problem occurred during sending email.\n" + e.getMessage());
-        }
+        emailService.enqueue(toEmail, subject, body);
     }
 
     public void validatePassword(String password) {
@@ -257,18 +254,6 @@ public class UserService {
         return recoveryToken;
     }
 
-    @Scheduled(fixedDelay = 5 * 60 * 1000)
-    public void removeExpiredRecoveryTokens() {
-        List<RecoveryToken> list = recoveryTokenRepository.findAll();
-        list = list.stream().filter(t -> t.getExpirationDate().isBefore(LocalDateTime.now(ZoneId.of("Europe/Warsaw")))).collect(Collectors.toList());
-        for (RecoveryToken recoveryToken : list) {
-            if (!recoveryToken.getUserEntity().isEnabled()) {
-                userRepository.delete(recoveryToken.getUserEntity());
-            }
-            recoveryTokenRepository.delete(recoveryToken);
-        }
-    }
-
     public boolean isAccountActivationRequired() {
         return accountsRequireActivation;
     }
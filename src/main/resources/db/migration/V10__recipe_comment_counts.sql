@@ -0,0 +1,3 @@
+ALTER TABLE recipe ADD COLUMN comment_count int8;
+
+UPDATE recipe SET comment_count = (SELECT COUNT(*) FROM comment c WHERE c.recipe_id = recipe.id);
@@ -0,0 +1,3 @@
+ALTER TABLE rating ADD CONSTRAINT uk_rating_recipe_user UNIQUE (recipe_id, user_id);
+CREATE INDEX idx_recipe_ingredient_recipe_product ON recipe_ingredient (recipe_id, product_id);
+CREATE INDEX idx_recipe_tags_recipe ON recipe_tags (recipe_id);
@@ -0,0 +1,7 @@
+ALTER TABLE product ADD COLUMN normalized_name varchar(255);
+
+-- Same as Product.normalizeName
+UPDATE product SET normalized_name = COALESCE(LOWER(TRIM(name)), '');
+
+CREATE INDEX idx_product_barcode ON product (barcode);
+CREATE INDEX idx_product_normalized_name ON product (normalized_name, id);
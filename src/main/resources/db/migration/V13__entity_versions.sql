@@ -0,0 +1,6 @@
+ALTER TABLE recipe ADD COLUMN version int8;
+ALTER TABLE product ADD COLUMN version int8;
+
+-- Hibernate takes an entity with a null version for a new one
+UPDATE recipe SET version = 0;
+UPDATE product SET version = 0;
@@ -0,0 +1,3 @@
+-- The images were moved to stored_image by version 14
+ALTER TABLE recipe DROP COLUMN image;
+ALTER TABLE product DROP COLUMN image;
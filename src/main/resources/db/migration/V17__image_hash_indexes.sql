@@ -0,0 +1,3 @@
+-- Lets the image cleanup check whether a recipe or product still shows an image without scanning the tables
+CREATE INDEX idx_recipe_image_hash ON recipe (image_hash);
+CREATE INDEX idx_product_image_hash ON product (image_hash);
@@ -0,0 +1,83 @@
+-- The schema as created by ddl-auto=create before migrations were introduced.
+CREATE SEQUENCE hibernate_sequence START WITH 1 INCREMENT BY 1;
+
+CREATE TABLE user_entity (
+    id int8 NOT NULL,
+    activation_token varchar(255),
+    enabled boolean NOT NULL,
+    first_name varchar(255),
+    last_name varchar(255),
+    password varchar(255),
+    username varchar(255),
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE product (
+    id int8 NOT NULL,
+    barcode varchar(255),
+    image ${blob_type},
+    name varchar(255),
+    author_id int8,
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE recipe (
+    id int8 NOT NULL,
+    creation_date varchar(255),
+    description text,
+    image ${blob_type},
+    modification_date varchar(255),
+    rating float8,
+    title varchar(255),
+    author_id int8,
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE recipe_tags (
+    recipe_id int8 NOT NULL,
+    tags varchar(255)
+);
+
+CREATE TABLE recipe_ingredient (
+    product_id int8 NOT NULL,
+    recipe_id int8 NOT NULL,
+    quantity varchar(255),
+    PRIMARY KEY (product_id, recipe_id)
+);
+
+CREATE TABLE rating (
+    id int8 NOT NULL,
+    rating float8,
+    recipe_id int8,
+    user_id int8,
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE comment (
+    id int8 NOT NULL,
+    content text,
+    creation_date varchar(255),
+    modification_date varchar(255),
+    author_id int8,
+    recipe_id int8,
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE recovery_token (
+    id int8 NOT NULL,
+    expiration_date timestamp,
+    token varchar(255),
+    user_entity_id int8,
+    PRIMARY KEY (id)
+);
+
+ALTER TABLE comment ADD CONSTRAINT FK3uf8b18hgf8a43cdehhkv3jgf FOREIGN KEY (author_id) REFERENCES user_entity;
+ALTER TABLE comment ADD CONSTRAINT FKe5i1rxybcm40jcn98fj1jmvit FOREIGN KEY (recipe_id) REFERENCES recipe;
+ALTER TABLE product ADD CONSTRAINT FKj4g935k9ot2m23melil4hdin FOREIGN KEY (author_id) REFERENCES user_entity;
+ALTER TABLE rating ADD CONSTRAINT FK6x7y7iu3omnr3wcg93jkfdorb FOREIGN KEY (recipe_id) REFERENCES recipe;
+ALTER TABLE rating ADD CONSTRAINT FK4kqjhj2yxt3vc6cspjbu8rqbx FOREIGN KEY (user_id) REFERENCES user_entity;
+ALTER TABLE recipe ADD CONSTRAINT FKbyuafowjt1kobhvy4dk8fmt6n FOREIGN KEY (author_id) REFERENCES user_entity;
+ALTER TABLE recipe_tags ADD CONSTRAINT FKm8d9e65tioqhbd8eanewapglx FOREIGN KEY (recipe_id) REFERENCES recipe;
+ALTER TABLE recipe_ingredient ADD CONSTRAINT FKrf60kpdml0dwdnsa6oauoqqu3 FOREIGN KEY (product_id) REFERENCES product;
+ALTER TABLE recipe_ingredient ADD CONSTRAINT FKgu1oxq7mbcgkx5dah6o8geirh FOREIGN KEY (recipe_id) REFERENCES recipe;
+ALTER TABLE recovery_token ADD CONSTRAINT FKe0c7omlgcattdkxh8i4ed7c1m FOREIGN KEY (user_entity_id) REFERENCES user_entity;
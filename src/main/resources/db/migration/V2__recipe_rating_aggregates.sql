@@ -0,0 +1,12 @@
+-- Keeps the latest rating when a user rated a recipe more than once, so that the aggregates count every user once
+-- and the unique key on (recipe_id, user_id) can be added later.
+DELETE FROM rating r
+WHERE EXISTS (SELECT 1 FROM rating newer WHERE newer.recipe_id = r.recipe_id AND newer.user_id = r.user_id AND newer.id > r.id);
+
+ALTER TABLE recipe ADD COLUMN rating_sum float8;
+ALTER TABLE recipe ADD COLUMN rating_count int8;
+
+UPDATE recipe SET
+    rating_sum = COALESCE((SELECT SUM(r.rating) FROM rating r WHERE r.recipe_id = recipe.id), 0),
+    rating_count = (SELECT COUNT(*) FROM rating r WHERE r.recipe_id = recipe.id);
+UPDATE recipe SET rating = CASE WHEN rating_count = 0 THEN 0 ELSE rating_sum / rating_count END;
@@ -0,0 +1,24 @@
+-- The dates were stored as LocalDateTime.toString(), which both databases parse as an ISO timestamp.
+ALTER TABLE recipe ADD COLUMN creation_timestamp timestamp;
+ALTER TABLE recipe ADD COLUMN modification_timestamp timestamp;
+UPDATE recipe SET
+    creation_timestamp = CAST(creation_date AS timestamp),
+    modification_timestamp = CAST(modification_date AS timestamp);
+ALTER TABLE recipe DROP COLUMN creation_date;
+ALTER TABLE recipe DROP COLUMN modification_date;
+ALTER TABLE recipe RENAME COLUMN creation_timestamp TO creation_date;
+ALTER TABLE recipe RENAME COLUMN modification_timestamp TO modification_date;
+
+ALTER TABLE comment ADD COLUMN creation_timestamp timestamp;
+ALTER TABLE comment ADD COLUMN modification_timestamp timestamp;
+UPDATE comment SET
+    creation_timestamp = CAST(creation_date AS timestamp),
+    modification_timestamp = CAST(modification_date AS timestamp);
+ALTER TABLE comment DROP COLUMN creation_date;
+ALTER TABLE comment DROP COLUMN modification_date;
+ALTER TABLE comment RENAME COLUMN creation_timestamp TO creation_date;
+ALTER TABLE comment RENAME COLUMN modification_timestamp TO modification_date;
+
+CREATE INDEX idx_recipe_creation_date ON recipe (creation_date, id);
+CREATE INDEX idx_recipe_modification_date ON recipe (modification_date, id);
+CREATE INDEX idx_comment_recipe_creation_date ON comment (recipe_id, creation_date, id);
@@ -0,0 +1,12 @@
+CREATE TABLE stored_image (
+    hash varchar(64) NOT NULL,
+    content_type varchar(255),
+    creation_date timestamp,
+    data ${blob_type},
+    size int8,
+    PRIMARY KEY (hash)
+);
+
+-- Filled from the old image columns by version 14
+ALTER TABLE recipe ADD COLUMN image_hash varchar(64);
+ALTER TABLE product ADD COLUMN image_hash varchar(64);
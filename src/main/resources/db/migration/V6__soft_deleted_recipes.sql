@@ -0,0 +1 @@
+ALTER TABLE recipe ADD COLUMN deleted boolean DEFAULT false NOT NULL;
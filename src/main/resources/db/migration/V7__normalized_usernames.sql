@@ -0,0 +1,7 @@
+ALTER TABLE user_entity ADD COLUMN normalized_username varchar(255);
+
+-- Same as UserEntity.normalizeUsername. Usernames that only differ in case or surrounding spaces make the unique
+-- key fail, and have to be merged by hand before the migration can run.
+UPDATE user_entity SET normalized_username = LOWER(TRIM(username)) WHERE TRIM(username) <> '';
+
+ALTER TABLE user_entity ADD CONSTRAINT uk_user_normalized_username UNIQUE (normalized_username);
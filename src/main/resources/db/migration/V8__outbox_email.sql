@@ -0,0 +1,15 @@
+CREATE TABLE outbox_email (
+    id int8 NOT NULL,
+    attempts int4 NOT NULL,
+    body text,
+    creation_date timestamp,
+    last_error varchar(1000),
+    next_attempt_at timestamp,
+    recipient varchar(255),
+    sent_at timestamp,
+    status varchar(16),
+    subject varchar(255),
+    PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_outbox_email_status_next_attempt ON outbox_email (status, next_attempt_at);
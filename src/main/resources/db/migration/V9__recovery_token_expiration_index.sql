@@ -0,0 +1 @@
+CREATE INDEX idx_recovery_token_expiration_date ON recovery_token (expiration_date);
@@ -6,6 +6,7 @@ import com.students.recipesapi.entity.Recipe;
 import com.students.recipesapi.exception.InvalidInputException;
 import com.students.recipesapi.exception.NotFoundException;
 import com.students.recipesapi.model.CommentModel;
+import com.students.recipesapi.model.CommentPage;
 import com.students.recipesapi.model.ProductModel;
 import com.students.recipesapi.model.RecipeModel;
 import com.students.recipesapi.model.RegisterModel;
@@ -71,6 +72,43 @@ public class CommentTests {
         );
     }
 
+    @Test
+    void findPageForRecipe_MoreCommentsThanPageSize_ReturnPagesInCreationOrder() {
+        // Given
+        Recipe recipe = recipeService.create(registeredUsername, pizzaRecipeModel);
+        Comment[] comments = new Comment[5];
+        for (int i = 0; i < 5; i++) {
+            comments[i] = commentService.create(registeredUsername, new CommentModel(0L, "Test" + i, recipe.getId()));
+        }
+
+        // When
+        CommentPage firstPage = commentService.findPageForRecipe(recipe.getId(), 3, null);
+        CommentPage secondPage = commentService.findPageForRecipe(recipe.getId(), 3, firstPage.getNextCursor());
+
+        // Then
+        assertThat(firstPage.getComments()).extracting(Comment::getId)
+                .containsExactly(comments[0].getId(), comments[1].getId(), comments[2].getId());
+        assertThat(firstPage.getNextCursor()).isNotNull();
+        assertThat(secondPage.getComments()).extracting(Comment::getId)
+                .containsExactly(comments[3].getId(), comments[4].getId());
+        assertThat(secondPage.getNextCursor()).isNull();
+        assertThat(secondPage.getComments().get(0).getAuthor().getUsername()).isEqualTo(registeredUsername);
+    }
+
+    @Test
+    void countForRecipe_CommentsCreatedAndDeleted_ReturnCurrentCount() {
+        // Given
+        Recipe recipe = recipeService.create(registeredUsername, pizzaRecipeModel);
+        Comment first = commentService.create(registeredUsername, new CommentModel(0L, "Test", recipe.getId()));
+        commentService.create(registeredUsername, new CommentModel(0L, "Test", recipe.getId()));
+
+        // When
+        commentService.delete(registeredUsername, first.getId());
+
+        // Then
+        assertThat(commentService.countForRecipe(recipe.getId())).isEqualTo(1);
+    }
+
     @Test
     void findForRecipe_NonexistentRecipe_ReturnEmptyList() {
         // Given
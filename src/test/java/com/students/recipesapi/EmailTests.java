@@ -0,0 +1,134 @@
+package com.students.recipesapi;
+
+import com.students.recipesapi.entity.OutboxEmail;
+import com.students.recipesapi.repository.OutboxEmailRepository;
+import com.students.recipesapi.service.EmailService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Transport;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest
+public class EmailTests {
+    @Autowired
+    EmailService emailService;
+
+    @Autowired
+    OutboxEmailRepository outboxRepository;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    EmailService dispatcher;
+    Transport transport;
+
+    @BeforeEach
+    void setup() throws MessagingException {
+        transport = mock(Transport.class);
+        dispatcher = spy(emailService);
+        doReturn(transport).when(dispatcher).openTransport();
+    }
+
+    @Test
+    void dispatchPending_QueuedEmails_SendAllOverOneConnection() throws Exception {
+        // Given
+        emailService.enqueue("first@test.com", "Subject", "Body");
+        emailService.enqueue("second@test.com", "Subject", "Body");
+
+        // When
+        dispatcher.dispatchPending();
+
+        // Then
+        List<OutboxEmail> emails = awaitAttempted("first@test.com", "second@test.com");
+        assertThat(emails).extracting(OutboxEmail::getStatus).containsOnly(OutboxEmail.Status.SENT);
+        verify(transport, times(2)).sendMessage(any(Message.class), any(Address[].class));
+        verify(dispatcher, times(1)).openTransport();
+    }
+
+    @Test
+    void dispatchPending_SmtpFails_RetryLater() throws Exception {
+        // Given
+        doThrow(new MessagingException("Connection reset")).when(transport).sendMessage(any(Message.class), any(Address[].class));
+        emailService.enqueue("retry@test.com", "Subject", "Body");
+
+        // When
+        dispatcher.dispatchPending();
+
+        // Then
+        OutboxEmail email = awaitAttempted("retry@test.com").get(0);
+        assertThat(email.getStatus()).isEqualTo(OutboxEmail.Status.PENDING);
+        assertThat(email.getLastError()).contains("Connection reset");
+        assertThat(email.getNextAttemptAt()).isAfter(LocalDateTime.now(ZoneId.of("Europe/Warsaw")));
+    }
+
+    @Test
+    void claim_MessageClaimedByAnotherPoll_ClaimNothing() {
+        // Given
+        LocalDateTime now = LocalDateTime.now(ZoneId.of("Europe/Warsaw"));
+        OutboxEmail email = outboxRepository.save(new OutboxEmail("claimed@test.com", "Subject", "Body", now));
+        LocalDateTime dueAt = outboxRepository.findById(email.getId()).get().getNextAttemptAt();
+        transactionTemplate.execute(status -> outboxRepository.claim(email.getId(), OutboxEmail.Status.PENDING, dueAt, now.plusMinutes(5)));
+
+        // When
+        Integer claimed = transactionTemplate.execute(status -> outboxRepository.claim(email.getId(), OutboxEmail.Status.PENDING, dueAt, now.plusMinutes(5)));
+
+        // Then
+        assertThat(claimed).isZero();
+    }
+
+    @Test
+    void dispatchPending_WorkersRejectBatch_ReleaseClaimedEmails() {
+        // Given
+        EmailService stoppedService = new EmailService(outboxRepository, transactionTemplate, "localhost", false, 1000, 1);
+        ReflectionTestUtils.setField(stoppedService, "batchSize", 20);
+        ReflectionTestUtils.setField(stoppedService, "claimSeconds", 300L);
+        stoppedService.shutdown();
+        emailService.enqueue("rejected@test.com", "Subject", "Body");
+
+        // When
+        stoppedService.dispatchPending();
+
+        // Then
+        OutboxEmail email = outboxRepository.findAll().stream()
+                .filter(candidate -> candidate.getRecipient().equals("rejected@test.com"))
+                .findFirst()
+                .get();
+        assertThat(email.getAttempts()).isZero();
+        assertThat(email.getNextAttemptAt()).isBeforeOrEqualTo(LocalDateTime.now(ZoneId.of("Europe/Warsaw")));
+    }
+
+    private List<OutboxEmail> awaitAttempted(String... recipients) throws InterruptedException {
+        List<OutboxEmail> emails = findAttempted(recipients);
+        for (int attempt = 0; attempt < 50 && emails.size() < recipients.length; attempt++) {
+            Thread.sleep(100);
+            emails = findAttempted(recipients);
+        }
+        assertThat(emails).hasSize(recipients.length);
+        return emails;
+    }
+
+    private List<OutboxEmail> findAttempted(String... recipients) {
+        List<String> recipientList = Arrays.asList(recipients);
+        return outboxRepository
+                .findAll()
+                .stream()
+                .filter(email -> recipientList.contains(email.getRecipient()) && email.getAttempts() > 0)
+                .collect(Collectors.toList());
+    }
+}
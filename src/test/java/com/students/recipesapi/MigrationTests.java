@@ -0,0 +1,147 @@
+package com.students.recipesapi;
+
+import com.students.recipesapi.migration.JavaMigration;
+import com.students.recipesapi.migration.SchemaMigrator;
+import com.students.recipesapi.service.ImageService;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Upgrades a database with the schema and data from before the migrations, as left by ddl-auto=create, and
+ * checks that the new columns are filled from the existing rows.
+ */
+@SpringBootTest
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class MigrationTests {
+    @Autowired
+    List<JavaMigration> javaMigrations;
+
+    private static final String exampleBase64Image = "iVBORw0KGgoAAAANSUhEUgAAACAAAAAgCAIAAAD8GO2jAAAAAXNSR0IArs4c6QAAAARnQU1BAACxjwv8YQUAAAAJcEhZcwAADsMAAA7DAcdvqGQAAADPSURBVEhL7Y1BEsUgCEN7/0v7GaE2YpDWqZs/fRsxCeQom/kKUqzgqOg8MrcU+w9cRhRK9qulGUFFpCvgifi6gC5ft7cyJkShaw10aTgvsCnABV4uENcFiGLvCdpj2kFdJyYFNgVEBaiTArXbMCEKoE4SaqfXhfUCxf4xUQb1MBEtI1EG9b8saHba8UIBRkeo67Z8wttLBTZVSIFNJ5OOxwXijTtUVFDXmGJSxRfY1DPREVN77hZQK9KRy55HqZteF+4WLLPlKPIVpGwuKOUHRXOc8NtT3yEAAAAASUVORK5CYII=";
+
+    private final byte[] image = Base64.getDecoder().decode(exampleBase64Image);
+
+    private DriverManagerDataSource legacyDatabase;
+    private JdbcTemplate jdbc;
+
+    @BeforeAll
+    void setup() throws IOException {
+        legacyDatabase = new DriverManagerDataSource("jdbc:h2:mem:legacy;DB_CLOSE_DELAY=-1", "sa", "sa");
+        jdbc = new JdbcTemplate(legacyDatabase);
+
+        String baseline = StreamUtils.copyToString(
+                new ClassPathResource("db/migration/V1__baseline.sql").getInputStream(), StandardCharsets.UTF_8);
+        for (String statement : baseline.replace("${blob_type}", "blob").split(";")) {
+            if (!statement.replaceAll("--.*", "").trim().isEmpty()) jdbc.execute(statement);
+        }
+
+        jdbc.update("INSERT INTO user_entity (id, enabled, username) VALUES (1, true, ' Jan@Example.com')");
+        jdbc.update("INSERT INTO user_entity (id, enabled, username) VALUES (2, true, 'anna@example.com')");
+        jdbc.update("INSERT INTO product (id, name, image, author_id) VALUES (3, ' Mąka ', ?, 1)", (Object) image);
+        jdbc.update("INSERT INTO product (id, name, author_id) VALUES (4, NULL, 1)");
+        jdbc.update("INSERT INTO recipe (id, title, creation_date, modification_date, image, rating, author_id) " +
+                "VALUES (5, 'Pizza', '2021-03-01T12:34:56.789', '2021-03-02T08:00', ?, 0, 1)", (Object) image);
+        jdbc.update("INSERT INTO rating (id, rating, recipe_id, user_id) VALUES (6, 2.0, 5, 1)");
+        jdbc.update("INSERT INTO rating (id, rating, recipe_id, user_id) VALUES (7, 4.0, 5, 1)");
+        jdbc.update("INSERT INTO rating (id, rating, recipe_id, user_id) VALUES (8, 5.0, 5, 2)");
+        jdbc.update("INSERT INTO comment (id, content, creation_date, modification_date, author_id, recipe_id) " +
+                "VALUES (9, 'Good', '2021-03-03T10:15:30', '2021-03-03T10:15:30', 2, 5)");
+
+        new SchemaMigrator(legacyDatabase, javaMigrations).migrate();
+    }
+
+    @Test
+    void migrate_BaselineRecipe_FillAggregatesAndConvertDates() {
+        // Given
+        // When
+        Map<String, Object> recipe = jdbc.queryForMap("SELECT * FROM recipe WHERE id = 5");
+
+        // Then
+        assertThat(recipe.get("rating_sum")).isEqualTo(9.0);
+        assertThat(recipe.get("rating_count")).isEqualTo(2L);
+        assertThat(recipe.get("rating")).isEqualTo(4.5);
+        assertThat(recipe.get("comment_count")).isEqualTo(1L);
+        assertThat(recipe.get("version")).isEqualTo(0L);
+        assertThat(recipe.get("deleted")).isEqualTo(false);
+        assertThat(recipe.get("creation_date")).isEqualTo(Timestamp.valueOf(LocalDateTime.of(2021, 3, 1, 12, 34, 56, 789_000_000)));
+        assertThat(recipe.get("modification_date")).isEqualTo(Timestamp.valueOf(LocalDateTime.of(2021, 3, 2, 8, 0)));
+    }
+
+    @Test
+    void migrate_DuplicateRatings_KeepLatestRating() {
+        // Given
+        // When
+        List<Double> ratings = jdbc.queryForList("SELECT rating FROM rating WHERE recipe_id = 5 ORDER BY id", Double.class);
+
+        // Then
+        assertThat(ratings).containsExactly(4.0, 5.0);
+    }
+
+    @Test
+    void migrate_InlineImages_MoveToStoredImages() {
+        // Given
+        String hash = ImageService.hash(image);
+
+        // When
+        List<Map<String, Object>> storedImages = jdbc.queryForList("SELECT hash, content_type, size FROM stored_image");
+
+        // Then
+        assertThat(storedImages).hasSize(1);
+        assertThat(storedImages.get(0).get("hash")).isEqualTo(hash);
+        assertThat(storedImages.get(0).get("content_type")).isEqualTo("image/png");
+        assertThat(storedImages.get(0).get("size")).isEqualTo((long) image.length);
+        assertThat(jdbc.queryForObject("SELECT image_hash FROM recipe WHERE id = 5", String.class)).isEqualTo(hash);
+        assertThat(jdbc.queryForObject("SELECT image_hash FROM product WHERE id = 3", String.class)).isEqualTo(hash);
+        assertThat(jdbc.queryForObject("SELECT image_hash FROM product WHERE id = 4", String.class)).isNull();
+    }
+
+    @Test
+    void migrate_BaselineUsersAndProducts_FillNormalizedNames() {
+        // Given
+        // When
+        List<String> usernames = jdbc.queryForList("SELECT normalized_username FROM user_entity ORDER BY id", String.class);
+        List<String> productNames = jdbc.queryForList("SELECT normalized_name FROM product ORDER BY id", String.class);
+
+        // Then
+        assertThat(usernames).containsExactly("jan@example.com", "anna@example.com");
+        assertThat(productNames).containsExactly("mąka", "");
+    }
+
+    @Test
+    void migrate_ExistingRecipeIds_StartRecipeSequencePastThem() {
+        // Given
+        // When
+        Long next = jdbc.queryForObject("SELECT NEXT VALUE FOR recipe_sequence", Long.class);
+
+        // Then
+        assertThat(next - 49).isGreaterThan(5L);
+    }
+
+    @Test
+    void migrate_MigratedDatabase_ApplyNothing() {
+        // Given
+        Integer applied = jdbc.queryForObject("SELECT COUNT(*) FROM schema_version", Integer.class);
+
+        // When
+        new SchemaMigrator(legacyDatabase, javaMigrations).migrate();
+
+        // Then
+        assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM schema_version", Integer.class)).isEqualTo(applied);
+    }
+}
@@ -2,17 +2,40 @@ package com.students.recipesapi;
 
 import com.students.recipesapi.entity.Product;
 import com.students.recipesapi.entity.UserEntity;
+import com.students.recipesapi.exception.ImageTooLargeException;
 import com.students.recipesapi.exception.NotFoundException;
+import com.students.recipesapi.model.ImageMetadata;
+import com.students.recipesapi.model.ImageUpload;
+import com.students.recipesapi.model.ImageVariant;
 import com.students.recipesapi.model.ProductModel;
+import com.students.recipesapi.model.ProductPage;
+import com.students.recipesapi.model.ProductSummary;
 import com.students.recipesapi.model.RegisterModel;
+import com.students.recipesapi.repository.StoredImageRepository;
+import com.students.recipesapi.service.ImageService;
+import com.students.recipesapi.service.ProductCache;
 import com.students.recipesapi.service.ProductService;
+import com.students.recipesapi.service.ThumbnailService;
 import com.students.recipesapi.service.UserService;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
-import org.postgresql.util.Base64;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -27,6 +50,18 @@ public class ProductTests {
     @Autowired
     ProductService productService;
 
+    @Autowired
+    ImageService imageService;
+
+    @Autowired
+    ThumbnailService thumbnailService;
+
+    @Autowired
+    StoredImageRepository imageRepository;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
     private final String registeredUsername = "test@gmail.com";
     private UserEntity registeredUser;
 
@@ -50,7 +85,7 @@ public class ProductTests {
         assertEquals(returnedProduct.getAuthor().getUsername(), registeredUsername);
         assertEquals(returnedProduct.getName(), productModel.getName());
         assertEquals(returnedProduct.getBarcode(), productModel.getBarcode());
-        assertEquals(Base64.encodeBytes(returnedProduct.getImage()), productModel.getImage());
+        assertEquals(storedImageBase64(returnedProduct), productModel.getImage());
     }
 
     @Test
@@ -63,7 +98,30 @@ public class ProductTests {
 
         // Then
         Product returnedProduct = productService.findById(createdProduct.getId());
-        assertEquals(returnedProduct.getImageBase64(), productModel.getImage());
+        assertEquals(storedImageBase64(returnedProduct), productModel.getImage());
+    }
+
+    @Test
+    void create_LargeImage_GenerateThumbnailInBackground() throws IOException, InterruptedException {
+        // Given
+        BufferedImage largeImage = new BufferedImage(1000, 500, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream encodedImage = new ByteArrayOutputStream();
+        ImageIO.write(largeImage, "png", encodedImage);
+        ProductModel productModel = new ProductModel(0L, "Pomidor", "12345678", Base64.getEncoder().encodeToString(encodedImage.toByteArray()));
+
+        // When
+        Product createdProduct = productService.create(registeredUsername, productModel);
+
+        // Then
+        Optional<Path> thumbnail = thumbnailService.findVariant(createdProduct.getImageHash(), ImageVariant.THUMBNAIL);
+        for (int attempt = 0; attempt < 50 && !thumbnail.isPresent(); attempt++) {
+            Thread.sleep(100);
+            thumbnail = thumbnailService.findVariant(createdProduct.getImageHash(), ImageVariant.THUMBNAIL);
+        }
+        assertThat(thumbnail).isPresent();
+        BufferedImage thumbnailImage = ImageIO.read(thumbnail.get().toFile());
+        assertThat(thumbnailImage.getWidth()).isEqualTo(ImageVariant.THUMBNAIL.getMaxDimension());
+        assertThat(thumbnailImage.getHeight()).isEqualTo(ImageVariant.THUMBNAIL.getMaxDimension() / 2);
     }
 
     @Test
@@ -84,7 +142,7 @@ public class ProductTests {
         assertEquals(returnedProduct.getAuthor().getUsername(), registeredUsername);
         assertEquals(returnedProduct.getName(), updateModel.getName());
         assertEquals(returnedProduct.getBarcode(), updateModel.getBarcode());
-        assertEquals(Base64.encodeBytes(returnedProduct.getImage()), updateModel.getImage());
+        assertEquals(storedImageBase64(returnedProduct), updateModel.getImage());
     }
 
     @Test
@@ -125,4 +183,172 @@ public class ProductTests {
                 () -> productService.delete(registeredUsername, productId)
         );
     }
+
+    @Test
+    void findModelByBarcode_BarcodeLookedUpBefore_ServeWithoutStatements() {
+        // Given
+        Product createdProduct = productService.create(registeredUsername, new ProductModel(0L, "Jogurt", "5900000000017", null));
+        productService.create(registeredUsername, new ProductModel(0L, "Jogurt nowy", "5900000000017", null));
+        productService.findModelByBarcode("5900000000017");
+        StatementCounter.reset();
+
+        // When
+        ProductModel productModel = productService.findModelByBarcode("5900000000017");
+
+        // Then
+        assertThat(StatementCounter.get()).isZero();
+        assertThat(productModel.getId()).isEqualTo(createdProduct.getId());
+        assertThat(productModel.getName()).isEqualTo("Jogurt");
+    }
+
+    @Test
+    void productCache_Full_EvictLeastRecentlyUsedWithItsBarcode() {
+        // Given
+        ProductCache cache = new ProductCache(2);
+        cache.putForBarcode(new ProductModel(1L, "Mleko", "111", null), cache.generation());
+        cache.putForBarcode(new ProductModel(2L, "Masło", "222", null), cache.generation());
+        cache.get(1L);
+
+        // When
+        cache.putForBarcode(new ProductModel(3L, "Ser", "333", null), cache.generation());
+
+        // Then
+        assertThat(cache.getByBarcode("111")).isNotNull();
+        assertThat(cache.get(2L)).isNull();
+        assertThat(cache.getByBarcode("222")).isNull();
+        assertThat(cache.getByBarcode("333")).isNotNull();
+    }
+
+    @Test
+    void update_CachedProduct_ReturnUpdatedModel() {
+        // Given
+        Product createdProduct = productService.create(registeredUsername, new ProductModel(0L, "Kefir", "5900000000024", null));
+        productService.findModelById(createdProduct.getId());
+        productService.findModelByBarcode("5900000000024");
+        ProductModel updateModel = new ProductModel(createdProduct.getId(), "Kefir naturalny", "5900000000031", null);
+
+        // When
+        productService.update(registeredUsername, updateModel);
+
+        // Then
+        assertThat(productService.findModelById(createdProduct.getId()).getName()).isEqualTo("Kefir naturalny");
+        assertThat(productService.findModelByBarcode("5900000000031").getId()).isEqualTo(createdProduct.getId());
+        assertThrows(
+                NotFoundException.class,
+                () -> productService.findModelByBarcode("5900000000024")
+        );
+    }
+
+    @Test
+    void findPage_NamePrefixAcrossPages_ReturnMatchingProductsInNameOrder() {
+        // Given
+        Product pear = productService.create(registeredUsername, new ProductModel(0L, "Kwiz gruszka", "1", exampleBase64Image));
+        Product apple = productService.create(registeredUsername, new ProductModel(0L, "kwiz jabłko", "2", null));
+        Product banana = productService.create(registeredUsername, new ProductModel(0L, " KWIZ banan", "3", null));
+
+        // When
+        ProductPage firstPage = productService.findPage("kWiZ", 2, null);
+        ProductPage secondPage = productService.findPage("kWiZ", 2, firstPage.getNextCursor());
+
+        // Then
+        assertThat(firstPage.getProducts()).extracting(ProductSummary::getId).containsExactly(banana.getId(), pear.getId());
+        assertThat(firstPage.getProducts().get(1).getImageUrl()).isEqualTo(String.format("/products/%d/image", pear.getId()));
+        assertThat(firstPage.getNextCursor()).isNotNull();
+        assertThat(secondPage.getProducts()).extracting(ProductSummary::getId).containsExactly(apple.getId());
+        assertThat(secondPage.getNextCursor()).isNull();
+    }
+
+    @Test
+    void insertStreaming_ImageStoredConcurrently_ReturnFalseAndKeepTransactionUsable() {
+        // Given
+        byte[] data = "stored by two uploads".getBytes(StandardCharsets.UTF_8);
+        String hash = imageService.store(data);
+        ImageMetadata metadata = new ImageMetadata(hash, "application/octet-stream", (long) data.length, LocalDateTime.now());
+
+        // When
+        Boolean inserted = transactionTemplate.execute(status -> {
+            boolean result = imageRepository.insertStreaming(metadata, new ByteArrayInputStream(data));
+            imageRepository.findDataByHash(hash);
+            return result;
+        });
+
+        // Then
+        assertThat(inserted).isFalse();
+        assertThat(imageRepository.existsById(hash)).isTrue();
+    }
+
+    @Test
+    void updateImage_Base64StreamWithLineBreaks_StoreDecodedImage() {
+        // Given
+        Product createdProduct = productService.create(registeredUsername, new ProductModel(0L, "Ser", "5900000000048", null));
+        String wrappedBase64 = exampleBase64Image.replaceAll("(.{76})", "$1\r\n");
+        InputStream upload = new ByteArrayInputStream(wrappedBase64.getBytes(StandardCharsets.US_ASCII));
+
+        // When
+        productService.updateImage(registeredUsername, createdProduct.getId(), new ImageUpload(upload, true));
+
+        // Then
+        Product returnedProduct = productService.findById(createdProduct.getId());
+        assertEquals(storedImageBase64(returnedProduct), exampleBase64Image);
+        assertThat(imageService.findByHash(returnedProduct.getImageHash()).getContentType()).isEqualTo("image/png");
+    }
+
+    @Test
+    void updateImage_ReplacedImage_DeleteOldImage() throws InterruptedException {
+        // Given
+        String oldImage = Base64.getEncoder().encodeToString("replaced product image".getBytes(StandardCharsets.UTF_8));
+        Product createdProduct = productService.create(registeredUsername, new ProductModel(0L, "Seler", "5900000000062", oldImage));
+        String oldHash = createdProduct.getImageHash();
+        InputStream upload = new ByteArrayInputStream(exampleBase64Image.getBytes(StandardCharsets.US_ASCII));
+
+        // When
+        productService.updateImage(registeredUsername, createdProduct.getId(), new ImageUpload(upload, true));
+
+        // Then
+        for (int attempt = 0; attempt < 50 && imageRepository.existsById(oldHash); attempt++) {
+            Thread.sleep(100);
+        }
+        assertThat(imageRepository.existsById(oldHash)).isFalse();
+        assertThat(imageRepository.existsById(productService.findById(createdProduct.getId()).getImageHash())).isTrue();
+    }
+
+    @Test
+    void updateImage_ImageAboveSizeLimit_ThrowImageTooLargeException() {
+        // Given
+        Product createdProduct = productService.create(registeredUsername, new ProductModel(0L, "Masło", "5900000000055", null));
+        InputStream upload = new InputStream() {
+            private long remaining = 10 * 1024 * 1024 + 1;
+
+            @Override
+            public int read() {
+                return remaining-- > 0 ? 0 : -1;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) {
+                if (remaining <= 0) return -1;
+                int read = (int) Math.min(length, remaining);
+                remaining -= read;
+                return read;
+            }
+        };
+
+        // When
+        // Then
+        assertThrows(
+                ImageTooLargeException.class,
+                () -> productService.updateImage(registeredUsername, createdProduct.getId(), new ImageUpload(upload, false))
+        );
+        assertThat(productService.findById(createdProduct.getId()).getImageHash()).isNull();
+    }
+
+    private String storedImageBase64(Product product) {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        try {
+            imageService.copyData(product.getImageHash(), data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return Base64.getEncoder().encodeToString(data.toByteArray());
+    }
 }
@@ -0,0 +1,226 @@
+package com.students.recipesapi;
+
+import com.students.recipesapi.entity.Product;
+import com.students.recipesapi.entity.Recipe;
+import com.students.recipesapi.model.CommentModel;
+import com.students.recipesapi.model.ProductModel;
+import com.students.recipesapi.model.RatingModel;
+import com.students.recipesapi.model.RecipeModel;
+import com.students.recipesapi.model.RegisterModel;
+import com.students.recipesapi.service.CommentService;
+import com.students.recipesapi.service.ProductService;
+import com.students.recipesapi.service.RatingService;
+import com.students.recipesapi.service.RecipeResponseCache;
+import com.students.recipesapi.service.RecipeService;
+import com.students.recipesapi.service.UserService;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Guards the number of SQL statements the public recipe endpoints issue, independent of how many recipes,
+ * ingredients and tags there are.
+ */
+@SpringBootTest
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class QueryCountTests {
+    @Autowired
+    WebApplicationContext context;
+
+    @Autowired
+    UserService userService;
+
+    @Autowired
+    ProductService productService;
+
+    @Autowired
+    RecipeService recipeService;
+
+    @Autowired
+    CommentService commentService;
+
+    @Autowired
+    RatingService ratingService;
+
+    @Autowired
+    RecipeResponseCache responseCache;
+
+    private final String registeredUsername = "queryCountTests@gmail.com";
+    private MockMvc mockMvc;
+    private Recipe recipe;
+    private final List<Long> productIds = new ArrayList<>();
+
+    @BeforeAll
+    void setup() {
+        mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+        userService.register(new RegisterModel(registeredUsername, "12345678"));
+        Product tomato = productService.create(registeredUsername, new ProductModel(0L, "Pomidor", "12345678", "imageima"));
+        Product carrot = productService.create(registeredUsername, new ProductModel(0L, "Marchewka", "87654321", "imageima"));
+        for (int i = 0; i < 20; i++) {
+            productIds.add(productService.create(registeredUsername, new ProductModel(0L, "Produkt " + i, "0000" + i, null)).getId());
+        }
+        for (int i = 0; i < 3; i++) {
+            recipe = recipeService.create(registeredUsername, new RecipeModel(0L, "Gulasz licznikowy " + i, "Opis",
+                    Arrays.asList(tomato.getId(), carrot.getId()), Arrays.asList("1", "2"), Arrays.asList("obiad", "mięso"), "imageima"));
+        }
+        for (int i = 0; i < 5; i++) {
+            commentService.create(registeredUsername, new CommentModel(null, "Komentarz " + i, recipe.getId()));
+        }
+    }
+
+    @Test
+    void getOne_ExistingRecipe_LoadWithTwoStatements() throws Exception {
+        // Recipe with author and ingredients, then its tags
+        responseCache.invalidate(recipe.getId());
+        assertStatementCount("/recipes/get/" + recipe.getId(), 2);
+    }
+
+    @Test
+    void getAll_FullView_LoadPageWithThreeStatements() throws Exception {
+        // Page keys, recipes with authors and ingredients, tags of the whole page
+        assertStatementCount("/recipes/get/all?size=10", 3);
+    }
+
+    @Test
+    void getAll_SummaryView_LoadPageWithThreeStatements() throws Exception {
+        // Page keys, summaries, tags of the whole page
+        assertStatementCount("/recipes/get/all?size=10&view=summary", 3);
+    }
+
+    @Test
+    void query_RankedSearch_LoadPageWithTwoStatements() throws Exception {
+        // Ranking comes from the search index, so only recipes and their tags are read
+        assertStatementCount("/recipes/get?query=licznikowy&sort=&direction=", 2);
+    }
+
+    @Test
+    void commentsForRecipe_PageWithAuthors_LoadWithOneStatement() throws Exception {
+        // Comments of the page joined with their authors
+        assertStatementCount("/comments/get/forRecipe/" + recipe.getId() + "?size=3", 1);
+    }
+
+    @Test
+    void commentCountForRecipe_MaintainedCounter_LoadWithOneStatement() throws Exception {
+        assertStatementCount("/comments/get/countForRecipe/" + recipe.getId(), 1);
+    }
+
+    @Test
+    void productsAll_PrefixFilteredPage_LoadWithOneStatement() throws Exception {
+        assertStatementCount("/products/get/all?prefix=produkt&size=10", 1);
+    }
+
+    @Test
+    void getOne_CachedRecipe_ServeWithoutStatements() throws Exception {
+        mockMvc.perform(get("/recipes/get/" + recipe.getId())).andExpect(status().isOk());
+        assertStatementCount("/recipes/get/" + recipe.getId(), 0);
+    }
+
+    @Test
+    void getOne_MatchingEtag_AnswerNotModifiedWithoutStatements() throws Exception {
+        // Served from the response cache
+        assertNotModifiedStatementCount("/recipes/get/" + recipe.getId(), 0);
+    }
+
+    @Test
+    void getOne_CommentAdded_ServeUpdatedResponse() throws Exception {
+        // Given
+        String url = "/recipes/get/" + recipe.getId();
+        mockMvc.perform(get(url)).andExpect(status().isOk());
+        long commentCount = commentService.countForRecipe(recipe.getId());
+
+        // When
+        commentService.create(registeredUsername, new CommentModel(null, "Komentarz po odczycie", recipe.getId()));
+
+        // Then
+        mockMvc.perform(get(url)).andExpect(jsonPath("$.commentCount").value(commentCount + 1));
+    }
+
+    @Test
+    void getAll_MatchingEtag_AnswerNotModifiedWithOneStatement() throws Exception {
+        // Page keys with their versions only
+        assertNotModifiedStatementCount("/recipes/get/all?size=10", 1);
+    }
+
+    @Test
+    void commentsForRecipe_CommentAdded_ChangeEtag() throws Exception {
+        // Given
+        String url = "/comments/get/forRecipe/" + recipe.getId() + "?size=3";
+        String etag = mockMvc.perform(get(url)).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        // When
+        commentService.create(registeredUsername, new CommentModel(null, "Nowy komentarz", recipe.getId()));
+
+        // Then
+        mockMvc.perform(get(url).header(HttpHeaders.IF_NONE_MATCH, etag)).andExpect(status().isOk());
+    }
+
+    @Test
+    void create_TwentyIngredients_WriteWithBoundedStatements() {
+        // Given
+        RecipeModel recipeModel = new RecipeModel(0L, "Sałatka licznikowa", "Opis", productIds,
+                Collections.nCopies(productIds.size(), "1"), Arrays.asList("kolacja", "warzywa"), "imageima");
+        StatementCounter.reset();
+
+        // When
+        recipeService.create(registeredUsername, recipeModel);
+
+        // Then
+        // User, image lookup, products, recipe insert, tag batch, ingredient batch,
+        // plus at most a sequence call and an image insert, independent of the ingredient count
+        assertThat(StatementCounter.get()).isLessThanOrEqualTo(8);
+    }
+
+    @Test
+    void rate_ExistingRating_WriteWithoutReadingRecipe() {
+        // Given
+        ratingService.rate(registeredUsername, new RatingModel(recipe.getId(), 2.0));
+        StatementCounter.reset();
+
+        // When
+        ratingService.rate(registeredUsername, new RatingModel(recipe.getId(), 4.0));
+
+        // Then
+        // User, locked rating aggregate, user's rating, rating update, aggregate update
+        assertThat(StatementCounter.get()).isEqualTo(5);
+    }
+
+    private void assertStatementCount(String url, int expectedCount) throws Exception {
+        // Given
+        StatementCounter.reset();
+
+        // When
+        mockMvc.perform(get(url)).andExpect(status().isOk());
+
+        // Then
+        assertThat(StatementCounter.get()).isEqualTo(expectedCount);
+    }
+
+    private void assertNotModifiedStatementCount(String url, int expectedCount) throws Exception {
+        // Given
+        String etag = mockMvc.perform(get(url)).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(etag).isNotNull();
+        StatementCounter.reset();
+
+        // When
+        mockMvc.perform(get(url).header(HttpHeaders.IF_NONE_MATCH, etag)).andExpect(status().isNotModified());
+
+        // Then
+        assertThat(StatementCounter.get()).isEqualTo(expectedCount);
+    }
+}
@@ -6,6 +6,7 @@ import com.students.recipesapi.entity.UserEntity;
 import com.students.recipesapi.exception.InvalidInputException;
 import com.students.recipesapi.exception.NotFoundException;
 import com.students.recipesapi.model.ProductModel;
+import com.students.recipesapi.model.RatingAggregate;
 import com.students.recipesapi.model.RatingModel;
 import com.students.recipesapi.model.RecipeModel;
 import com.students.recipesapi.model.RegisterModel;
@@ -23,8 +24,10 @@ import org.junit.jupiter.params.provider.MethodSource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.*;
 import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -45,6 +48,9 @@ public class RatingTests {
     @Autowired
     RatingService ratingService;
 
+    @Autowired
+    SchemaIndexVerifier schemaIndexVerifier;
+
     private static final String exampleBase64Image = "iVBORw0KGgoAAAANSUhEUgAAACAAAAAgCAIAAAD8GO2jAAAAAXNSR0IArs4c6QAAAARnQU1BAACxjwv8YQUAAAAJcEhZcwAADsMAAA7DAcdvqGQAAADPSURBVEhL7Y1BEsUgCEN7/0v7GaE2YpDWqZs/fRsxCeQom/kKUqzgqOg8MrcU+w9cRhRK9qulGUFFpCvgifi6gC5ft7cyJkShaw10aTgvsCnABV4uENcFiGLvCdpj2kFdJyYFNgVEBaiTArXbMCEKoE4SaqfXhfUCxf4xUQb1MBEtI1EG9b8saHba8UIBRkeo67Z8wttLBTZVSIFNJ5OOxwXijTtUVFDXmGJSxRfY1DPREVN77hZQK9KRy55HqZteF+4WLLPlKPIVpGwuKOUHRXOc8NtT3yEAAAAASUVORK5CYII=";
 
     private final String registeredUsername = "ratingTests@gmail.com";
@@ -115,6 +121,19 @@ public class RatingTests {
         );
     }
 
+    @Test
+    void getAvgForRecipe_ExistingRecipe_ReadWithOneStatement() {
+        // Given
+        Recipe recipe = recipeService.create(registeredUsername, pizzaRecipeModel);
+        StatementCounter.reset();
+
+        // When
+        ratingService.getAvgForRecipe(recipe.getId());
+
+        // Then
+        assertThat(StatementCounter.get()).isEqualTo(1);
+    }
+
     @Test
     void getAvgForRecipe_NotRatedRecipe_ReturnZero() {
         // Given
@@ -158,4 +177,81 @@ public class RatingTests {
         // Then
         assertThat(averageRating).isEqualTo(targetAverage);
     }
+
+    @Test
+    void rate_SameUserRatesTwice_ReplaceRatingInAverage() {
+        // Given
+        Recipe recipe = recipeService.create(registeredUsername, pizzaRecipeModel);
+        UserEntity user = userService.register(new RegisterModel("rate_SameUserRatesTwice@email.com", "12345678"));
+        ratingService.rate(registeredUsername, new RatingModel(recipe.getId(), 2.0));
+
+        // When
+        ratingService.rate(user.getUsername(), new RatingModel(recipe.getId(), 5.0));
+        ratingService.rate(user.getUsername(), new RatingModel(recipe.getId(), 4.0));
+
+        // Then
+        Recipe ratedRecipe = recipeService.findById(recipe.getId());
+        assertThat(ratedRecipe.getRatingCount()).isEqualTo(2L);
+        assertThat(ratedRecipe.getRatingSum()).isEqualTo(6.0);
+        assertThat(ratingService.getAvgForRecipe(recipe.getId())).isEqualTo(3.0);
+    }
+
+    @Test
+    void rate_RecipeAlreadyRated_ReturnUpdatedAggregate() {
+        // Given
+        Recipe recipe = recipeService.create(registeredUsername, pizzaRecipeModel);
+        UserEntity user = userService.register(new RegisterModel("rate_RecipeAlreadyRated@email.com", "12345678"));
+        ratingService.rate(registeredUsername, new RatingModel(recipe.getId(), 2.0));
+
+        // When
+        RatingAggregate aggregate = ratingService.rate(user.getUsername(), new RatingModel(recipe.getId(), 5.0));
+
+        // Then
+        assertThat(aggregate.getRatingCount()).isEqualTo(2L);
+        assertThat(aggregate.getRatingSum()).isEqualTo(7.0);
+        assertThat(aggregate.getAverage()).isEqualTo(3.5);
+        assertThat(aggregate.getAverage()).isEqualTo(ratingService.getAvgForRecipe(recipe.getId()));
+    }
+
+    @Test
+    void rate_SameUserRatesConcurrently_KeepSingleRating() throws Exception {
+        // Given
+        Recipe recipe = recipeService.create(registeredUsername, pizzaRecipeModel);
+        UserEntity user = userService.register(new RegisterModel("rate_SameUserRatesConcurrently@email.com", "12345678"));
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<RatingAggregate>> results = new ArrayList<>();
+
+        // When
+        for (int i = 0; i < threads; i++) {
+            double value = 1.0 + i % 5;
+            results.add(executor.submit(() -> {
+                start.await();
+                return ratingService.rate(user.getUsername(), new RatingModel(recipe.getId(), value));
+            }));
+        }
+        start.countDown();
+        for (Future<RatingAggregate> result : results) {
+            result.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // Then
+        Recipe ratedRecipe = recipeService.findById(recipe.getId());
+        double storedRating = ratingService.getUserRatingForRecipe(user.getUsername(), recipe.getId()).getRating();
+        assertThat(ratedRecipe.getRatingCount()).isEqualTo(1L);
+        assertThat(ratedRecipe.getRatingSum()).isEqualTo(storedRating);
+        assertThat(ratingService.getAvgForRecipe(recipe.getId())).isEqualTo(storedRating);
+    }
+
+    @Test
+    void findMissingIndexes_SchemaCreatedByMigrations_ReturnEmptyList() {
+        // Given
+        // When
+        List<String> missing = schemaIndexVerifier.findMissingIndexes();
+
+        // Then
+        assertThat(missing).isEmpty();
+    }
 }
@@ -5,10 +5,19 @@ import com.students.recipesapi.entity.Recipe;
 import com.students.recipesapi.entity.UserEntity;
 import com.students.recipesapi.exception.InvalidInputException;
 import com.students.recipesapi.exception.NotFoundException;
+import com.students.recipesapi.model.CommentModel;
 import com.students.recipesapi.model.ProductModel;
 import com.students.recipesapi.model.RecipeModel;
+import com.students.recipesapi.model.RecipePage;
+import com.students.recipesapi.model.RecipeSummary;
 import com.students.recipesapi.model.RegisterModel;
+import com.students.recipesapi.model.UserUpdateModel;
+import com.students.recipesapi.repository.CommentRepository;
+import com.students.recipesapi.repository.RecipeRepository;
+import com.students.recipesapi.service.CommentService;
+import com.students.recipesapi.service.ImageService;
 import com.students.recipesapi.service.ProductService;
+import com.students.recipesapi.service.RecipeResponseCache;
 import com.students.recipesapi.service.RecipeService;
 import com.students.recipesapi.service.UserService;
 import org.assertj.core.util.Lists;
@@ -17,9 +26,18 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
-
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.Collections;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -27,6 +45,9 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 @SpringBootTest
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 public class RecipeTests {
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
     @Autowired
     UserService userService;
 
@@ -36,6 +57,18 @@ public class RecipeTests {
     @Autowired
     RecipeService recipeService;
 
+    @Autowired
+    ImageService imageService;
+
+    @Autowired
+    CommentService commentService;
+
+    @Autowired
+    RecipeRepository recipeRepository;
+
+    @Autowired
+    CommentRepository commentRepository;
+
     private static final String exampleBase64Image = "iVBORw0KGgoAAAANSUhEUgAAACAAAAAgCAIAAAD8GO2jAAAAAXNSR0IArs4c6QAAAARnQU1BAACxjwv8YQUAAAAJcEhZcwAADsMAAA7DAcdvqGQAAADPSURBVEhL7Y1BEsUgCEN7/0v7GaE2YpDWqZs/fRsxCeQom/kKUqzgqOg8MrcU+w9cRhRK9qulGUFFpCvgifi6gC5ft7cyJkShaw10aTgvsCnABV4uENcFiGLvCdpj2kFdJyYFNgVEBaiTArXbMCEKoE4SaqfXhfUCxf4xUQb1MBEtI1EG9b8saHba8UIBRkeo67Z8wttLBTZVSIFNJ5OOxwXijTtUVFDXmGJSxRfY1DPREVN77hZQK9KRy55HqZteF+4WLLPlKPIVpGwuKOUHRXOc8NtT3yEAAAAASUVORK5CYII=";
 
     private final String registeredUsername = "recipeTests@gmail.com";
@@ -85,7 +118,7 @@ public class RecipeTests {
         assertThat(recipe.getDescription()).isEqualTo(pizzaRecipeModel.getDescription());
         assertThat(recipe.getTags()).containsExactlyInAnyOrderElementsOf(pizzaRecipeModel.getTags());
         assertThat(recipe.getIngredients().stream().map(key -> key.getProduct().getId())).containsExactlyInAnyOrderElementsOf(pizzaRecipeModel.getIngredients());
-        assertThat(recipe.getImageBase64()).isEqualTo(pizzaRecipeModel.getImage());
+        assertThat(storedImageBase64(recipe)).isEqualTo(pizzaRecipeModel.getImage());
     }
 
     @Test
@@ -272,11 +305,9 @@ public class RecipeTests {
         assertThat(recipe.getDescription()).isEqualTo(recipeModel.getDescription());
         assertThat(recipe.getTags()).containsExactlyInAnyOrderElementsOf(recipeModel.getTags());
         assertThat(recipe.getIngredients().stream().map(key -> key.getProduct().getId())).containsExactlyInAnyOrderElementsOf(recipeModel.getIngredients());
-        assertThat(recipe.getImageBase64()).isEqualTo(recipeModel.getImage());
+        assertThat(storedImageBase64(recipe)).isEqualTo(recipeModel.getImage());
     }
 
-
-/*
     @Test
     void findById_DeletedRecipe_ThrowNotFoundException() {
         // Given
@@ -289,7 +320,34 @@ public class RecipeTests {
                 () -> recipeService.findById(recipe.getId())
         );
     }
-*/
+
+    @Test
+    void delete_RecipeAboveTombstoneThreshold_HideAndPurgeInBackground() throws InterruptedException {
+        // Given
+        Recipe recipe = recipeService.create(registeredUsername, pizzaRecipeModel);
+        commentService.create(registeredUsername, new CommentModel(null, "Pyszne", recipe.getId()));
+        commentService.create(registeredUsername, new CommentModel(null, "Polecam", recipe.getId()));
+        assertThat(commentService.countForRecipe(recipe.getId())).isEqualTo(2);
+        ReflectionTestUtils.setField(recipeService, "tombstoneThreshold", 1L);
+
+        // When
+        try {
+            recipeService.delete(registeredUsername, recipe.getId());
+        } finally {
+            ReflectionTestUtils.setField(recipeService, "tombstoneThreshold", 5000L);
+        }
+
+        // Then
+        assertThrows(
+                NotFoundException.class,
+                () -> recipeService.findById(recipe.getId())
+        );
+        for (int attempt = 0; attempt < 50 && recipeRepository.existsById(recipe.getId()); attempt++) {
+            Thread.sleep(100);
+        }
+        assertThat(recipeRepository.existsById(recipe.getId())).isFalse();
+        assertThat(commentRepository.findIdsByRecipeId(recipe.getId(), PageRequest.of(0, 1))).isEmpty();
+    }
 
     @Test
     void delete_NonexistentRecipe_ThrowNotFoundException() {
@@ -340,6 +398,212 @@ public class RecipeTests {
         assertThat(returnedRecipe.getDescription()).isEqualTo(recipeModel.getDescription());
         assertThat(returnedRecipe.getTags()).containsExactlyInAnyOrderElementsOf(recipeModel.getTags());
         assertThat(returnedRecipe.getIngredients().stream().map(key -> key.getProduct().getId())).containsExactlyInAnyOrderElementsOf(recipeModel.getIngredients());
-        assertThat(returnedRecipe.getImageBase64()).isEqualTo(recipeModel.getImage());
+        assertThat(storedImageBase64(returnedRecipe)).isEqualTo(recipeModel.getImage());
+    }
+
+    @Test
+    void findByQuerySorted_FollowingCursors_ReturnEveryRecipeOnceInOrder() {
+        // Given
+        List<String> titles = Lists.list("Cursor E", "Cursor A", "Cursor D", "Cursor B", "Cursor C");
+        for (String title : titles) {
+            RecipeModel recipeModel = new RecipeModel(0L, title, "Description",
+                    Lists.list(tomato.getId()), Lists.list("1"), Lists.list("cursortest"), exampleBase64Image);
+            recipeService.create(registeredUsername, recipeModel);
+        }
+
+        // When
+        List<String> returnedTitles = new ArrayList<>();
+        String cursor = null;
+        do {
+            RecipePage<Recipe> page = recipeService.findByQuerySorted("cursortest", "title", "desc", null, 2, cursor);
+            page.getRecipes().forEach(recipe -> returnedTitles.add(recipe.getTitle()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+
+        // Then
+        assertThat(returnedTitles).containsExactly("Cursor E", "Cursor D", "Cursor C", "Cursor B", "Cursor A");
+    }
+
+    @Test
+    void findByQuerySorted_MoreHitsThanOneQueryBinds_ReturnEveryRecipeOnceInOrder() {
+        // Given
+        List<String> titles = Lists.list("Chunk G", "Chunk C", "Chunk I", "Chunk A", "Chunk E", "Chunk B", "Chunk H", "Chunk D", "Chunk F");
+        for (String title : titles) {
+            RecipeModel recipeModel = new RecipeModel(0L, title, "Description",
+                    Lists.list(tomato.getId()), Lists.list("1"), Lists.list("chunktest"), exampleBase64Image);
+            recipeService.create(registeredUsername, recipeModel);
+        }
+        ReflectionTestUtils.setField(recipeService, "maxIdsPerQuery", 4);
+
+        // When
+        List<String> returnedTitles = new ArrayList<>();
+        try {
+            String cursor = null;
+            do {
+                RecipePage<Recipe> page = recipeService.findByQuerySorted("chunktest", "title", "asc", null, 2, cursor);
+                page.getRecipes().forEach(recipe -> returnedTitles.add(recipe.getTitle()));
+                cursor = page.getNextCursor();
+            } while (cursor != null);
+        } finally {
+            ReflectionTestUtils.setField(recipeService, "maxIdsPerQuery", 5000);
+        }
+
+        // Then
+        assertThat(returnedTitles).containsExactly("Chunk A", "Chunk B", "Chunk C", "Chunk D", "Chunk E", "Chunk F", "Chunk G", "Chunk H", "Chunk I");
+    }
+
+    @Test
+    void findByQuerySorted_CreateRolledBack_DontFindRecipe() {
+        // Given
+        RecipeModel recipeModel = new RecipeModel(0L, "Wycofany kociołek", "Opis",
+                Lists.list(tomato.getId()), Lists.list("1"), Lists.list("obiad"), exampleBase64Image);
+
+        // When
+        transactionTemplate.executeWithoutResult(status -> {
+            recipeService.create(registeredUsername, recipeModel);
+            status.setRollbackOnly();
+        });
+
+        // Then
+        assertThat(recipeService.findByQuerySorted("kociołek", "", "", null, null, null).getRecipes()).isEmpty();
+    }
+
+    @Test
+    void findByQuerySorted_NoSort_RankTitleMatchesAboveDescriptionMatches() {
+        // Given
+        Recipe mentioned = recipeService.create(registeredUsername, new RecipeModel(0L, "Ciasto drożdżowe",
+                "Lepsze niż szarlotkowiec babci", Lists.list(tomato.getId()), Lists.list("1"), Lists.list("deser"), exampleBase64Image));
+        Recipe titled = recipeService.create(registeredUsername, new RecipeModel(0L, "Szarlotkowiec",
+                "Jabłka i kruche ciasto", Lists.list(tomato.getId()), Lists.list("1"), Lists.list("deser"), exampleBase64Image));
+
+        // When
+        RecipePage<Recipe> page = recipeService.findByQuerySorted("szarlotkowiec", "", "", null, null, null);
+
+        // Then
+        assertThat(page.getRecipes()).extracting(Recipe::getId).containsExactly(titled.getId(), mentioned.getId());
+    }
+
+    @Test
+    void findByQuerySorted_PrefixWithoutDiacritics_FindRecipe() {
+        // Given
+        Recipe recipe = recipeService.create(registeredUsername, new RecipeModel(0L, "Gołąbki w sosie",
+                "Opis", Lists.list(carrot.getId()), Lists.list("1"), Lists.list("obiad"), exampleBase64Image));
+
+        // When
+        RecipePage<Recipe> page = recipeService.findByQuerySorted("golab marchew", "", "", null, null, null);
+
+        // Then
+        assertThat(page.getRecipes()).extracting(Recipe::getId).containsExactly(recipe.getId());
+    }
+
+    @Test
+    void findByQuerySorted_UpdatedTitle_FindOnlyByNewTitle() {
+        // Given
+        Recipe recipe = recipeService.create(registeredUsername, new RecipeModel(0L, "Kluseczki",
+                "Opis", Lists.list(tomato.getId()), Lists.list("1"), Lists.list("obiad"), exampleBase64Image));
+        RecipeModel updateModel = new RecipeModel(recipe.getId(), "Kopytka", null, null, null, null, null);
+
+        // When
+        recipeService.update(registeredUsername, updateModel);
+
+        // Then
+        assertThat(recipeService.findByQuerySorted("kluseczki", "", "", null, null, null).getRecipes()).isEmpty();
+        assertThat(recipeService.findByQuerySorted("kopytka", "", "", null, null, null).getRecipes())
+                .extracting(Recipe::getId)
+                .containsExactly(recipe.getId());
+    }
+
+    @Test
+    void findByQuerySorted_AuthorDeleted_DontFindByOldName() {
+        // Given
+        String username = "removedAuthor@gmail.com";
+        userService.register(new RegisterModel(username, "12345678"));
+        userService.update(username, new UserUpdateModel("Bonifacy", "Przepiórkowski", null));
+        Recipe recipe = recipeService.create(username, new RecipeModel(0L, "Kasza",
+                "Opis", Lists.list(tomato.getId()), Lists.list("1"), Lists.list("obiad"), exampleBase64Image));
+        assertThat(recipeService.findByQuerySorted("przepiórkowski", "", "", null, null, null).getRecipes())
+                .extracting(Recipe::getId)
+                .containsExactly(recipe.getId());
+
+        // When
+        userService.delete(username);
+
+        // Then
+        assertThat(recipeService.findByQuerySorted("przepiórkowski", "", "", null, null, null).getRecipes()).isEmpty();
+    }
+
+    @Test
+    void findByQuerySorted_ProductRenamed_FindOnlyByNewName() {
+        // Given
+        Product product = productService.create(registeredUsername, new ProductModel(0L, "Rzodkiewka", "11223344", "imageima"));
+        Recipe recipe = recipeService.create(registeredUsername, new RecipeModel(0L, "Sałatka",
+                "Opis", Lists.list(product.getId()), Lists.list("1"), Lists.list("obiad"), exampleBase64Image));
+
+        // When
+        productService.update(registeredUsername, new ProductModel(product.getId(), "Szczypiorek", null, null));
+
+        // Then
+        assertThat(recipeService.findByQuerySorted("rzodkiewka", "", "", null, null, null).getRecipes()).isEmpty();
+        assertThat(recipeService.findByQuerySorted("szczypiorek", "", "", null, null, null).getRecipes())
+                .extracting(Recipe::getId)
+                .containsExactly(recipe.getId());
+    }
+
+    @Test
+    void findSummariesByQuerySorted_MatchingRecipe_ReturnSummaryWithTagsAndThumbnail() {
+        // Given
+        Recipe recipe = recipeService.create(registeredUsername, new RecipeModel(0L, "Bigos myśliwski",
+                "Opis", Lists.list(tomato.getId()), Lists.list("1"), Lists.list("obiad", "kapusta"), exampleBase64Image));
+
+        // When
+        RecipePage<RecipeSummary> page = recipeService.findSummariesByQuerySorted("bigos", "title", "asc", null, null, null);
+
+        // Then
+        assertThat(page.getRecipes()).hasSize(1);
+        RecipeSummary summary = page.getRecipes().get(0);
+        assertThat(summary.getId()).isEqualTo(recipe.getId());
+        assertThat(summary.getTitle()).isEqualTo("Bigos myśliwski");
+        assertThat(summary.getTags()).containsExactlyInAnyOrder("obiad", "kapusta");
+        assertThat(summary.getRating()).isEqualTo(0.0);
+        assertThat(summary.getThumbnailUrl()).isEqualTo(String.format("/recipes/%d/image?size=thumbnail", recipe.getId()));
+    }
+
+    @Test
+    void create_SameImageTwice_ShareStoredImage() {
+        // When
+        Recipe first = recipeService.create(registeredUsername, pizzaRecipeModel);
+        Recipe second = recipeService.create(registeredUsername, pizzaRecipeModel);
+
+        // Then
+        assertThat(first.getImageHash()).hasSize(64).isEqualTo(second.getImageHash());
+        assertThat(imageService.findMetadataForRecipe(second.getId()).getContentType()).isEqualTo("image/png");
+    }
+
+    @Test
+    void responseCache_OverMemoryBudget_EvictLeastRecentlyUsed() {
+        // Given
+        RecipeResponseCache cache = new RecipeResponseCache(2 * (100 + 96));
+        cache.put(1L, 0L, new byte[100], cache.generation());
+        cache.put(2L, 0L, new byte[100], cache.generation());
+        cache.get(1L);
+
+        // When
+        cache.put(3L, 0L, new byte[100], cache.generation());
+
+        // Then
+        assertThat(cache.get(1L)).isNotNull();
+        assertThat(cache.get(2L)).isNull();
+        assertThat(cache.get(3L)).isNotNull();
+        assertThat(cache.getUsedBytes()).isLessThanOrEqualTo(2 * (100 + 96));
+    }
+
+    private String storedImageBase64(Recipe recipe) {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        try {
+            imageService.copyData(recipe.getImageHash(), data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return Base64.getEncoder().encodeToString(data.toByteArray());
     }
 }
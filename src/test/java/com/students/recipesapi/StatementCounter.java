@@ -0,0 +1,25 @@
+package com.students.recipesapi;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Counts the SQL statements Hibernate prepares on the current thread, so that background work such as
+ * thumbnail generation does not leak into the counts asserted by QueryCountTests.
+ */
+public class StatementCounter implements StatementInspector {
+    private static final ThreadLocal<Integer> count = ThreadLocal.withInitial(() -> 0);
+
+    @Override
+    public String inspect(String sql) {
+        count.set(count.get() + 1);
+        return sql;
+    }
+
+    public static void reset() {
+        count.set(0);
+    }
+
+    public static int get() {
+        return count.get();
+    }
+}
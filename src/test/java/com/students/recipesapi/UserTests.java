@@ -8,19 +8,40 @@ import com.students.recipesapi.exception.InvalidInputException;
 import com.students.recipesapi.exception.NotFoundException;
 import com.students.recipesapi.model.RegisterModel;
 import com.students.recipesapi.model.UserUpdateModel;
+import com.students.recipesapi.repository.RecipeRepository;
 import com.students.recipesapi.repository.RecoveryTokenRepository;
 import com.students.recipesapi.repository.UserRepository;
+import com.students.recipesapi.exception.ServiceBusyException;
+import com.students.recipesapi.search.RecipeSearchIndex;
+import com.students.recipesapi.security.BoundedPasswordEncoder;
+import com.students.recipesapi.security.JwtTokenProvider;
+import com.students.recipesapi.security.PrincipalCache;
+import com.students.recipesapi.security.VerifiedToken;
+import com.students.recipesapi.service.EmailService;
+import com.students.recipesapi.service.RecipeResponseCache;
+import com.students.recipesapi.service.RecoveryTokenCleanupService;
 import com.students.recipesapi.service.UserService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatCode;
@@ -33,10 +54,29 @@ public class UserTests {
     UserService userService;
     UserRepository userRepository;
     RecoveryTokenRepository tokenRepository;
+    PrincipalCache principalCache;
 
     @Autowired
     PasswordEncoder passwordEncoder;
 
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    JwtTokenProvider jwtTokenProvider;
+
+    @Autowired
+    UserRepository persistentUserRepository;
+
+    @Autowired
+    AuthenticationManager authenticationManager;
+
+    @Autowired
+    RecoveryTokenRepository persistentTokenRepository;
+
+    @Autowired
+    RecoveryTokenCleanupService recoveryTokenCleanupService;
+
     private final String testEmail = "email@test.com";
     private final String testPassword = "12345678";
     private final String testUUIDToken = "1792830-345hdkfg-345ghh9g7";
@@ -47,7 +87,8 @@ public class UserTests {
     void setup() {
         userRepository = mock(UserRepository.class);
         tokenRepository = mock(RecoveryTokenRepository.class);
-        userService = spy(new UserService(userRepository, tokenRepository, passwordEncoder));
+        principalCache = new PrincipalCache(60000, 100);
+        userService = spy(new UserService(userRepository, tokenRepository, passwordEncoder, principalCache, mock(EmailService.class), mock(RecipeRepository.class), new RecipeResponseCache(0), mock(RecipeSearchIndex.class), transactionTemplate));
         doNothing().when(userService).sendEmail(anyString(), anyString(), anyString());
         when(userService.isAccountActivationRequired()).thenReturn(true);
 
@@ -330,6 +371,39 @@ public class UserTests {
         assertThat(passwordEncoder.matches(testUserUpdateModel.getPassword(), testUserEntity.getPassword())).isTrue();
     }
 
+    @Test
+    void update_NewPassword_EncodeOutsideTransaction() {
+        //given
+        when(userRepository.findByUsername(anyString())).thenReturn(Optional.of(testUserEntity));
+        PasswordEncoder encoder = spy(passwordEncoder);
+        List<Boolean> transactionActive = new ArrayList<>();
+        doAnswer(invocation -> {
+            transactionActive.add(TransactionSynchronizationManager.isActualTransactionActive());
+            return invocation.callRealMethod();
+        }).when(encoder).encode(any());
+        UserService service = new UserService(userRepository, tokenRepository, encoder, principalCache, mock(EmailService.class), mock(RecipeRepository.class), new RecipeResponseCache(0), mock(RecipeSearchIndex.class), transactionTemplate);
+
+        //when
+        service.update(testEmail, testUserUpdateModel);
+
+        //then
+        assertThat(transactionActive).containsExactly(false);
+        assertThat(passwordEncoder.matches(testUserUpdateModel.getPassword(), testUserEntity.getPassword())).isTrue();
+    }
+
+    @Test
+    void update_UserHasCachedPrincipal_InvalidateCachedPrincipal() {
+        //given
+        when(userRepository.findByUsername(anyString())).thenReturn(Optional.of(testUserEntity));
+        principalCache.put("token", testEmail, new UsernamePasswordAuthenticationToken(testUserEntity, ""), Long.MAX_VALUE);
+
+        //when
+        userService.update(testEmail, testUserUpdateModel);
+
+        //then
+        assertThat(principalCache.get("token")).isNull();
+    }
+
     @Test
     void delete_UsernameIsNull_ThrowNotFoundException() {
         //given
@@ -440,4 +514,116 @@ public class UserTests {
     void validateUsername_UsernameIsCorrect_DoesntThrow() {
         assertThatCode(() -> userService.validateUsername(testEmail)).doesNotThrowAnyException();
     }
+
+    @Test
+    void verify_TokenIsValid_ReturnUsername() {
+        //given
+        String token = jwtTokenProvider.createToken(testEmail, Collections.emptyList());
+
+        //when
+        Optional<VerifiedToken> result = jwtTokenProvider.verify(token);
+
+        //then
+        assertThat(result).isPresent();
+        assertThat(result.get().getUsername()).isEqualTo(testEmail);
+        assertThat(result.get().getExpiration()).isAfter(result.get().getIssuedAt());
+    }
+
+    @Test
+    void verify_TokenIsTampered_ReturnEmpty() {
+        //given
+        String token = jwtTokenProvider.createToken(testEmail, Collections.emptyList());
+        String tamperedToken = token.substring(0, token.length() - 2) + (token.endsWith("AA") ? "BB" : "AA");
+
+        //when
+        Optional<VerifiedToken> result = jwtTokenProvider.verify(tamperedToken);
+
+        //then
+        assertThat(result).isEmpty();
+    }
+
+    @Test
+    void findByUsername_DifferentCaseAndSpaces_FindPersistedUser() {
+        //given
+        persistentUserRepository.save(new UserEntity("Case.Test@Email.com", "Jan", "Kowalski", testPassword));
+
+        //when
+        Optional<UserEntity> result = persistentUserRepository.findByUsername("  case.test@email.COM ");
+
+        //then
+        assertThat(result).isPresent();
+        assertThat(result.get().getUsername()).isEqualTo("Case.Test@Email.com");
+        assertThat(persistentUserRepository.existsByUsername("CASE.TEST@EMAIL.COM")).isTrue();
+        assertThat(persistentUserRepository.existsByUsername("case.test@email.co")).isFalse();
+    }
+
+    @Test
+    void login_PasswordHashIsOutdated_UpgradeStoredHash() {
+        //given
+        String legacyHash = new BCryptPasswordEncoder(4).encode(testPassword);
+        UserEntity legacyUser = new UserEntity("legacy.hash@email.com", "Jan", "Kowalski", legacyHash);
+        legacyUser.setEnabled(true);
+        persistentUserRepository.save(legacyUser);
+
+        //when
+        authenticationManager.authenticate(new UsernamePasswordAuthenticationToken("legacy.hash@email.com", testPassword));
+
+        //then
+        String storedHash = persistentUserRepository.findByUsername("legacy.hash@email.com").get().getPassword();
+        assertThat(storedHash).startsWith("{bcrypt}");
+        assertThat(passwordEncoder.matches(testPassword, storedHash)).isTrue();
+    }
+
+    @Test
+    void encode_HashingPoolIsSaturated_ThrowServiceBusyException() throws InterruptedException {
+        //given
+        CountDownLatch release = new CountDownLatch(1);
+        PasswordEncoder slowEncoder = mock(PasswordEncoder.class);
+        when(slowEncoder.encode(anyString())).then(invocation -> {
+            release.await();
+            return "hash";
+        });
+        BoundedPasswordEncoder boundedEncoder = new BoundedPasswordEncoder(slowEncoder, 1, 1, 5000, 7);
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        callers.execute(() -> boundedEncoder.encode(testPassword));
+        callers.execute(() -> boundedEncoder.encode(testPassword));
+        Thread.sleep(200);
+
+        //when
+        ServiceBusyException result = assertThrows(
+                ServiceBusyException.class,
+                () -> boundedEncoder.encode(testPassword)
+        );
+
+        //then
+        assertThat(result.getRetryAfterSeconds()).isEqualTo(7);
+        release.countDown();
+        callers.shutdown();
+        boundedEncoder.shutdown();
+    }
+
+    @Test
+    void removeExpiredRecoveryTokens_ExpiredTokens_RemoveTokensAndUnactivatedAccounts() {
+        //given
+        LocalDateTime expired = LocalDateTime.now(ZoneId.of("Europe/Warsaw")).minusMinutes(1);
+        UserEntity unactivatedUser = persistentUserRepository.save(new UserEntity("unactivated@email.com", "", "", testPassword));
+        unactivatedUser.setActivationToken("expired-activation-token");
+        persistentUserRepository.save(unactivatedUser);
+        persistentTokenRepository.save(new RecoveryToken(null, "expired-activation-token", unactivatedUser, expired));
+        UserEntity activeUser = new UserEntity("active@email.com", "", "", testPassword);
+        activeUser.setEnabled(true);
+        persistentUserRepository.save(activeUser);
+        persistentTokenRepository.save(new RecoveryToken(null, "expired-recovery-token", activeUser, expired));
+
+        //when
+        RecoveryTokenCleanupService.CleanupResult result = recoveryTokenCleanupService.removeExpiredRecoveryTokens();
+
+        //then
+        assertThat(result.getTokens()).isGreaterThanOrEqualTo(2);
+        assertThat(result.getUsers()).isGreaterThanOrEqualTo(1);
+        assertThat(persistentTokenRepository.findRecoveryTokenByToken("expired-activation-token")).isEmpty();
+        assertThat(persistentTokenRepository.findRecoveryTokenByToken("expired-recovery-token")).isEmpty();
+        assertThat(persistentUserRepository.existsByUsername("unactivated@email.com")).isFalse();
+        assertThat(persistentUserRepository.existsByUsername("active@email.com")).isTrue();
+    }
 }